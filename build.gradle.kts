@@ -6,7 +6,10 @@ import net.minecraftforge.gradle.userdev.tasks.JarJar
 import net.minecraftforge.gradle.userdev.util.MavenPomUtils
 import net.minecraftforge.jarjar.metadata.*
 import org.apache.maven.artifact.versioning.DefaultArtifactVersion
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
 import org.apache.maven.artifact.versioning.VersionRange
+import java.io.DataOutputStream
 import java.nio.file.FileSystems
 import java.nio.file.Files
 import java.nio.file.StandardOpenOption
@@ -22,6 +25,7 @@ plugins {
     id("me.modmuss50.mod-publish-plugin") version "0.3.+"
     id("net.neoforged.gradleutils") version "2.0.+"
     id("org.parchmentmc.librarian.forgegradle") version "1.+"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 val versionConnector: String by project
@@ -135,6 +139,21 @@ val remappedDepsJar: ShadowJar by tasks.creating(ShadowJar::class) {
     relocate("net.bytebuddy", "reloc.net.bytebuddy")
     archiveClassifier.set("deps-reloc")
 }
+// Compile adapter data into a binary form indexed by target class, so that
+// only data relevant to installed mods needs to be deserialized at runtime
+val compileAdapterData by tasks.creating {
+    val outputDir = layout.buildDirectory.dir(name)
+    inputs.files(adapterData)
+    outputs.dir(outputDir)
+    doLast {
+        val output = outputDir.get().asFile.toPath()
+        Files.createDirectories(output)
+        FileSystems.newFileSystem(adapterData.singleFile.toPath()).use { fs ->
+            writeAdapterDataIndex(fs.getPath("patch_data.json"), output.resolve("patch_data.bin"))
+            writeAdapterDataIndex(fs.getPath("lvt_offsets.json"), output.resolve("lvt_offsets.bin"))
+        }
+    }
+}
 val fullJar: Jar by tasks.creating(Jar::class) {
     mustRunAfter("reobfModJar")
     from(zipTree(remappedDepsJar.archiveFile))
@@ -142,6 +161,9 @@ val fullJar: Jar by tasks.creating(Jar::class) {
         into("adapter_data")
         include("*.json")
     }
+    from(compileAdapterData) {
+        into("adapter_data")
+    }
     // Despite not being part of jarjar metadata, the mod jar must be located in this directory
     // in order to be deobfuscated by FG in userdev environments
     into("META-INF/jarjar/") {
@@ -196,6 +218,10 @@ configurations {
     "modAnnotationProcessor" {
         extendsFrom(configurations.annotationProcessor.get())
     }
+
+    "jmhImplementation" {
+        extendsFrom(shade)
+    }
 }
 
 sourceSets {
@@ -281,6 +307,9 @@ dependencies {
     runtimeOnly(fg.deobf("dev.su5ed.sinytra.fabric-api:fabric-api:$versionFabricApi"))
 
     "modCompileOnly"(sourceSets.main.get().output)
+
+    testImplementation(group = "org.junit.jupiter", name = "junit-jupiter", version = "5.10.0")
+    testRuntimeOnly(group = "org.junit.platform", name = "junit-platform-launcher", version = "1.10.0")
 }
 
 tasks {
@@ -311,6 +340,10 @@ tasks {
         dependsOn("reobfModJar", fullJar)
     }
 
+    test {
+        useJUnitPlatform()
+    }
+
     configureEach {
         if (name == "prepareRuns") {
             dependsOn(fullJar)
@@ -324,6 +357,13 @@ tasks {
     }
 }
 
+jmh {
+    jmhVersion.set("1.37")
+    // Benchmarks read classes from a directory of fabric mod jars, by default the mods folder of the dev runs
+    val corpus = providers.gradleProperty("jmhCorpus").orElse(file("run/mods").absolutePath)
+    jvmArgsAppend.add(corpus.map { "-Dconnector.benchmark.corpus=$it" })
+}
+
 publishMods {
     file.set(fullJar.archiveFile)
     changelog.set(providers.environmentVariable("CHANGELOG").orElse("# $version"))
@@ -387,3 +427,64 @@ publishing {
         }
     }
 }
+
+// Writes the binary format read by dev.su5ed.sinytra.connector.transformer.jar.AdapterDataIndex
+fun writeAdapterDataIndex(input: java.nio.file.Path, output: java.nio.file.Path) {
+    val classNamePattern = Regex("[\\w$]+(/[\\w$]+)+")
+    val root = input.inputStream().use { JsonSlurper().parse(it) }
+    val elements = mutableListOf<ByteArray>()
+    val keys = linkedMapOf<String, MutableList<Int>>()
+    fun addElement(json: Any?, targets: Collection<String>) {
+        val index = elements.size
+        elements += JsonOutput.toJson(json).toByteArray(Charsets.UTF_8)
+        // Elements with unknown targets are always loaded
+        val indexKeys = if (targets.isEmpty() || targets.any { !classNamePattern.matches(it) }) listOf("*") else targets
+        indexKeys.forEach { keys.getOrPut(it) { mutableListOf() } += index }
+    }
+    fun collectTargetClasses(json: Any?, targets: MutableSet<String>) {
+        when (json) {
+            is Map<*, *> -> json.forEach { (key, value) ->
+                if (key == "targetClasses") {
+                    (value as? Collection<*> ?: listOf(value)).forEach { targets += it.toString().replace('.', '/') }
+                } else {
+                    collectTargetClasses(value, targets)
+                }
+            }
+            is Collection<*> -> json.forEach { collectTargetClasses(it, targets) }
+        }
+    }
+    val rootType = when (root) {
+        is List<*> -> {
+            root.forEach { element -> addElement(element, mutableSetOf<String>().also { collectTargetClasses(element, it) }) }
+            0
+        }
+        is Map<*, *> -> {
+            root.forEach { (key, value) -> addElement(mapOf(key to value), listOf(key.toString())) }
+            1
+        }
+        else -> {
+            addElement(root, listOf())
+            2
+        }
+    }
+    DataOutputStream(Files.newOutputStream(output).buffered()).use { out ->
+        out.writeInt(0x434E4144)
+        out.writeInt(1)
+        out.writeByte(rootType)
+        out.writeInt(elements.size)
+        var offset = 0
+        elements.forEach {
+            out.writeInt(offset)
+            out.writeInt(it.size)
+            offset += it.size
+        }
+        out.writeInt(keys.size)
+        keys.forEach { (key, indices) ->
+            out.writeUTF(key)
+            out.writeInt(indices.size)
+            indices.forEach(out::writeInt)
+        }
+        out.writeInt(offset)
+        elements.forEach(out::write)
+    }
+}
@@ -0,0 +1,84 @@
+package dev.su5ed.sinytra.connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads benchmark inputs from a directory of fabric mod jars, set with the {@code connector.benchmark.corpus}
+ * system property. Gradle passes the dev runs' mods folder unless another one is given with {@code -PjmhCorpus}.
+ */
+public final class BenchmarkCorpus {
+    private static final String CORPUS_PROPERTY = "connector.benchmark.corpus";
+
+    /**
+     * {@return all jars in the corpus directory, sorted by name}
+     */
+    public static List<Path> getJars() throws IOException {
+        String property = System.getProperty(CORPUS_PROPERTY);
+        if (property == null) {
+            throw new IllegalStateException("Missing corpus directory, set it with -D" + CORPUS_PROPERTY);
+        }
+        Path dir = Path.of(property);
+        if (Files.notExists(dir)) {
+            throw new IllegalStateException("Corpus directory " + dir + " does not exist");
+        }
+        List<Path> jars;
+        try (Stream<Path> stream = Files.list(dir)) {
+            jars = stream
+                .filter(path -> path.getFileName().toString().endsWith(".jar"))
+                .sorted()
+                .toList();
+        }
+        if (jars.isEmpty()) {
+            throw new IllegalStateException("Corpus directory " + dir + " contains no jars");
+        }
+        return jars;
+    }
+
+    /**
+     * {@return the bytes of all classes in the corpus}
+     */
+    public static List<byte[]> readClasses() throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        for (Path jar : getJars()) {
+            try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.getName().endsWith(".class")) {
+                        try (InputStream is = zipFile.getInputStream(entry)) {
+                            classes.add(is.readAllBytes());
+                        }
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * {@return names of all non-directory entries, per jar in the corpus}
+     */
+    public static List<List<String>> readEntryNames() throws IOException {
+        List<List<String>> jars = new ArrayList<>();
+        for (Path jar : getJars()) {
+            try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+                jars.add(zipFile.stream()
+                    .filter(entry -> !entry.isDirectory())
+                    .map(ZipEntry::getName)
+                    .toList());
+            }
+        }
+        return jars;
+    }
+
+    private BenchmarkCorpus() {}
+}
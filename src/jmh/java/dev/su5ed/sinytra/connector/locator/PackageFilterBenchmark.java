@@ -0,0 +1,115 @@
+package dev.su5ed.sinytra.connector.locator;
+
+import dev.su5ed.sinytra.connector.BenchmarkCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+/**
+ * Measures the cost of a single union file system path lookup through {@link PackageTracker}, compared to the
+ * substring based filter it replaced. Packages of every other corpus jar are claimed, and lookups cycle through
+ * the entries of all jars. The merged variants split claimed packages between two filters, the way
+ * {@link ForgeModPackageFilter} combines a jar's existing filter with a new one.
+ * Run with {@code -prof gc} to compare allocations per lookup as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackageFilterBenchmark {
+    private String[] paths;
+    private int mask;
+    private int cursor;
+
+    private BiPredicate<String, String> substringFilter;
+    private BiPredicate<String, String> compiledFilter;
+    private BiPredicate<String, String> chainedSubstringFilters;
+    private BiPredicate<String, String> mergedCompiledFilters;
+
+    @Setup
+    public void setup() throws IOException {
+        List<List<String>> jars = BenchmarkCorpus.readEntryNames();
+        List<String> paths = new ArrayList<>();
+        Set<String> first = new HashSet<>();
+        Set<String> second = new HashSet<>();
+        for (int i = 0; i < jars.size(); i++) {
+            List<String> entries = jars.get(i);
+            paths.addAll(entries);
+            if (i % 2 == 0) {
+                Set<String> claimed = i % 4 == 0 ? first : second;
+                for (String entry : entries) {
+                    int idx = entry.lastIndexOf('/');
+                    if (idx > 0 && entry.endsWith(".class")) {
+                        claimed.add(entry.substring(0, idx).replace('/', '.'));
+                    }
+                }
+            }
+        }
+        // Round down to a power of two so that the cursor can wrap with a mask
+        int size = Integer.highestOneBit(paths.size());
+        this.paths = paths.subList(0, size).toArray(String[]::new);
+        this.mask = size - 1;
+
+        Set<String> all = new HashSet<>(first);
+        all.addAll(second);
+        this.substringFilter = new SubstringPackageFilter(all);
+        this.compiledFilter = new PackageTracker(all);
+        this.chainedSubstringFilters = new SubstringPackageFilter(first).and(new SubstringPackageFilter(second));
+        this.mergedCompiledFilters = PackageTracker.merge(new PackageTracker(first), new PackageTracker(second));
+    }
+
+    @Benchmark
+    public boolean substring() {
+        return this.substringFilter.test(nextPath(), "");
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return this.compiledFilter.test(nextPath(), "");
+    }
+
+    @Benchmark
+    public boolean chainedSubstring() {
+        return this.chainedSubstringFilters.test(nextPath(), "");
+    }
+
+    @Benchmark
+    public boolean mergedCompiled() {
+        return this.mergedCompiledFilters.test(nextPath(), "");
+    }
+
+    private String nextPath() {
+        return this.paths[this.cursor++ & this.mask];
+    }
+
+    /**
+     * The filter previously used by {@link PackageTracker}, which looks up dotted package names.
+     */
+    private record SubstringPackageFilter(Set<String> packages) implements BiPredicate<String, String> {
+        @Override
+        public boolean test(String path, String basePath) {
+            if (this.packages.isEmpty() || path.startsWith("META-INF/")) {
+                return true;
+            }
+            int idx = path.lastIndexOf('/');
+            return idx < 0 || idx == path.length() - 1 || !this.packages.contains(path.substring(0, idx).replace('/', '.'));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package dev.su5ed.sinytra.connector.transformer;
+
+import dev.su5ed.sinytra.adapter.patch.util.MethodQualifier;
+import dev.su5ed.sinytra.connector.BenchmarkCorpus;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares classifying string constants with the single-pass scanners of {@link OptimizedRenamingTransformer}
+ * against the regex matching it previously used. Constants are collected from the same places the post-process
+ * remapper reads them: LDC instructions, indy bootstrap arguments and field values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValueRemapperBenchmark {
+    private static final String CLASS_DESC_PATTERN = "^L[a-zA-Z0-9/$_]+;$";
+    private static final String FQN_CLASS_NAME_PATTERN = "^([a-zA-Z0-9$_]+\\.)*[a-zA-Z0-9$_]+$";
+
+    private String[] values;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> values = new ArrayList<>();
+        for (byte[] bytes : BenchmarkCorpus.readClasses()) {
+            ClassNode node = new ClassNode();
+            new ClassReader(bytes).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            for (MethodNode method : node.methods) {
+                for (AbstractInsnNode insn : method.instructions) {
+                    if (insn instanceof LdcInsnNode ldc && ldc.cst instanceof String str) {
+                        values.add(str);
+                    }
+                    else if (insn instanceof InvokeDynamicInsnNode indy) {
+                        for (Object arg : indy.bsmArgs) {
+                            if (arg instanceof String str) {
+                                values.add(str);
+                            }
+                        }
+                    }
+                }
+            }
+            for (FieldNode field : node.fields) {
+                if (field.value instanceof String str) {
+                    values.add(str);
+                }
+            }
+        }
+        this.values = values.toArray(String[]::new);
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        for (String str : this.values) {
+            if (str.matches(CLASS_DESC_PATTERN)) {
+                blackhole.consume(str.substring(1, str.length() - 1));
+            }
+            else if (str.matches(FQN_CLASS_NAME_PATTERN)) {
+                blackhole.consume(str.replace('.', '/'));
+            }
+            blackhole.consume(MethodQualifier.create(str));
+        }
+    }
+
+    @Benchmark
+    public void scanner(Blackhole blackhole) {
+        for (String str : this.values) {
+            if (OptimizedRenamingTransformer.hasMappingMarker(str)) {
+                if (OptimizedRenamingTransformer.isClassDescriptor(str)) {
+                    blackhole.consume(str.substring(1, str.length() - 1));
+                }
+                else if (OptimizedRenamingTransformer.isQualifiedClassName(str)) {
+                    blackhole.consume(str.replace('.', '/'));
+                }
+                if (str.indexOf('(') != -1) {
+                    blackhole.consume(MethodQualifier.create(str));
+                }
+            }
+        }
+    }
+}
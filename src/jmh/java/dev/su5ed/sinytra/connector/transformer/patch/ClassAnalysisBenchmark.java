@@ -0,0 +1,171 @@
+package dev.su5ed.sinytra.connector.transformer.patch;
+
+import dev.su5ed.sinytra.adapter.patch.analysis.MethodCallAnalyzer;
+import dev.su5ed.sinytra.connector.BenchmarkCorpus;
+import net.minecraftforge.srgutils.IMappingFile;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares {@link ClassAnalysingTransformer}, which scans instructions before running data flow analysis, against
+ * analysing every method of every class as it did before. Intermediary to SRG mappings need a running game, so a
+ * fixture built from the corpus stands in for them: intermediary Minecraft classes and corpus classes named by string
+ * constants are mapped to themselves, which makes methods referencing them eligible for analysis like at runtime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ClassAnalysisBenchmark {
+    private static final String THREE_STRING_ARGS_PREFIX = "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;";
+    private static final String MINECRAFT_CLASS_PREFIX = "net/minecraft/class_";
+    private static final Pattern NAME_PATTERN = Pattern.compile("\\S+");
+    private static final Pattern METHOD_DESC_PATTERN = Pattern.compile("\\((\\[*([ZCBSIFJD]|L[^;\\s]+;))*\\)\\[*([ZCBSIFJDV]|L[^;\\s]+;)");
+
+    private List<byte[]> classes;
+    private List<ClassNode> nodes;
+    private ClassAnalysingTransformer transformer;
+
+    @Setup
+    public void setup() throws IOException {
+        this.classes = BenchmarkCorpus.readClasses();
+        // Intermediate mappings are only consulted for reflection targets missing from the mappings
+        this.transformer = new ClassAnalysingTransformer(createMappings(this.classes), null);
+    }
+
+    /**
+     * Map intermediary Minecraft classes and corpus classes named by string constants to themselves. Owners of reflection calls whose arguments are all
+     * constants are mapped along with the called methods, so that the transformer never falls back to intermediate
+     * mappings. Owners whose calls can't be expressed in the mappings are left out.
+     */
+    private static IMappingFile createMappings(List<byte[]> classes) throws IOException {
+        Set<String> classNames = new HashSet<>();
+        Set<String> constants = new HashSet<>();
+        List<MethodNode> reflectionCallers = new ArrayList<>();
+        for (byte[] bytes : classes) {
+            ClassNode node = new ClassNode();
+            new ClassReader(bytes).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            classNames.add(node.name);
+            for (MethodNode method : node.methods) {
+                boolean hasReflectionCall = false;
+                for (AbstractInsnNode insn : method.instructions) {
+                    if (insn instanceof LdcInsnNode ldc && ldc.cst instanceof String str) {
+                        constants.add(str.replace('.', '/'));
+                    }
+                    else if (insn instanceof MethodInsnNode methodInsn && methodInsn.desc.startsWith(THREE_STRING_ARGS_PREFIX)) {
+                        hasReflectionCall = true;
+                    }
+                }
+                if (hasReflectionCall) {
+                    reflectionCallers.add(method);
+                }
+            }
+        }
+
+        Map<String, Set<String>> mapped = new TreeMap<>();
+        for (String constant : constants) {
+            if (classNames.contains(constant) || constant.startsWith(MINECRAFT_CLASS_PREFIX)) {
+                mapped.put(constant, new TreeSet<>());
+            }
+        }
+        Set<String> excluded = new HashSet<>();
+        for (MethodNode method : reflectionCallers) {
+            MethodCallAnalyzer.analyzeInterpretMethod(method, new SourceInterpreter(Opcodes.ASM9) {
+                @Override
+                public SourceValue naryOperation(AbstractInsnNode insn, List<? extends SourceValue> values) {
+                    if (insn instanceof MethodInsnNode methodInsn && methodInsn.desc.startsWith(THREE_STRING_ARGS_PREFIX) && values.size() >= 3) {
+                        String owner = getSingleLdcString(values.get(0));
+                        String name = getSingleLdcString(values.get(1));
+                        String desc = getSingleLdcString(values.get(2));
+                        if (owner != null && name != null && desc != null) {
+                            String ownerName = owner.replace('.', '/');
+                            if (NAME_PATTERN.matcher(ownerName).matches() && NAME_PATTERN.matcher(name).matches() && METHOD_DESC_PATTERN.matcher(desc).matches()) {
+                                mapped.computeIfAbsent(ownerName, k -> new TreeSet<>()).add(name + " " + desc);
+                            }
+                            else {
+                                excluded.add(ownerName);
+                            }
+                        }
+                    }
+                    return super.naryOperation(insn, values);
+                }
+            });
+        }
+        mapped.keySet().removeAll(excluded);
+
+        StringBuilder builder = new StringBuilder("tsrg2 left right\n");
+        mapped.forEach((cls, methods) -> {
+            builder.append(cls).append(' ').append(cls).append('\n');
+            for (String method : methods) {
+                String name = method.substring(0, method.indexOf(' '));
+                builder.append('\t').append(method).append(' ').append(name).append('\n');
+            }
+        });
+        return IMappingFile.load(new ByteArrayInputStream(builder.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String getSingleLdcString(SourceValue value) {
+        return value.insns.size() == 1 && value.insns.iterator().next() instanceof LdcInsnNode ldc && ldc.cst instanceof String str ? str : null;
+    }
+
+    // Classes are modified when processed, so each invocation starts from freshly read nodes
+    @Setup(Level.Invocation)
+    public void readNodes() {
+        this.nodes = new ArrayList<>(this.classes.size());
+        for (byte[] bytes : this.classes) {
+            ClassNode node = new ClassNode();
+            new ClassReader(bytes).accept(node, 0);
+            this.nodes.add(node);
+        }
+    }
+
+    @Benchmark
+    public void analyseAllMethods(Blackhole blackhole) {
+        for (ClassNode node : this.nodes) {
+            for (MethodNode method : node.methods) {
+                blackhole.consume(MethodCallAnalyzer.analyzeInterpretMethod(method, new SourceInterpreter()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void scanBeforeAnalysis(Blackhole blackhole) {
+        for (ClassNode node : this.nodes) {
+            blackhole.consume(this.transformer.process(node));
+        }
+    }
+}
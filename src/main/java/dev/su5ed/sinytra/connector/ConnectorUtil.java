@@ -2,7 +2,6 @@ package dev.su5ed.sinytra.connector;
 
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
-import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import cpw.mods.modlauncher.api.LamdbaExceptionUtils;
@@ -127,30 +126,49 @@ public final class ConnectorUtil {
     }
 
     public static CacheFile getCached(@Nullable Path input, Path output) {
-        if (CACHE_ENABLED) {
-            Path inputCache = output.getParent().resolve(output.getFileName() + ".input");
-            try {
-                String hash = EmbeddedDependencies.getJarCacheVersion();
-                if (input != null) {
-                    byte[] bytes = Files.readAllBytes(input);
-                    hash += "," + Hashing.sha256().hashBytes(bytes);
-                }
+        try {
+            return getCachedByKey(getCacheKey(input), output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Check if an output is up-to-date with a known cache key, deleting it if it's outdated.
+     *
+     * @param key    the cache key of the output's input, or {@code null} if caching is disabled
+     * @param output the cached output
+     */
+    public static CacheFile getCachedByKey(@Nullable String key, Path output) {
+        return getCachedByKey(key, output, true);
+    }
 
+    /**
+     * Check if an output is up-to-date with a known cache key.
+     *
+     * @param key            the cache key of the output's input, or {@code null} if caching is disabled
+     * @param output         the cached output
+     * @param deleteOutdated whether to delete the output if it's outdated, otherwise it's left for the caller to replace
+     */
+    public static CacheFile getCachedByKey(@Nullable String key, Path output, boolean deleteOutdated) {
+        if (key != null) {
+            Path inputCache = getCacheInputPath(output);
+            try {
                 if (Files.exists(inputCache)) {
                     if (Files.exists(output)) {
                         String cached = Files.readString(inputCache);
-                        if (cached.equals(hash)) {
-                            return new CacheFile(inputCache, hash, true);
+                        if (cached.equals(key)) {
+                            return new CacheFile(inputCache, key, true);
                         }
-                        else {
+                        else if (deleteOutdated) {
                             Files.delete(output);
                             Files.delete(inputCache);
                         }
                     }
-                } else {
+                } else if (deleteOutdated) {
                     Files.deleteIfExists(output);
                 }
-                return new CacheFile(inputCache, hash, false);
+                return new CacheFile(inputCache, key, false);
             } catch (Throwable t) {
                 throw new RuntimeException(t);
             }
@@ -158,6 +176,28 @@ public final class ConnectorUtil {
         return new CacheFile(null, null, false);
     }
 
+    /**
+     * {@return the file storing the cache key of an output's input}
+     */
+    public static Path getCacheInputPath(Path output) {
+        return output.getParent().resolve(output.getFileName() + ".input");
+    }
+
+    /**
+     * {@return the key identifying cached outputs produced from an input file, or {@code null} if caching is disabled}
+     */
+    @Nullable
+    public static String getCacheKey(@Nullable Path input) throws IOException {
+        if (!CACHE_ENABLED) {
+            return null;
+        }
+        String hash = EmbeddedDependencies.getJarCacheVersion();
+        if (input != null) {
+            hash += "," + FileHashIndex.get().getHash(input);
+        }
+        return hash;
+    }
+
     public static void cache(@Nullable Path input, Path output, ServiceRunner action) {
         CacheFile cacheFile = getCached(input, output);
         if (!cacheFile.isUpToDate()) {
@@ -220,6 +260,13 @@ public final class ConnectorUtil {
             return this.isUpToDate;
         }
 
+        /**
+         * {@return whether caching is enabled for this output}
+         */
+        public boolean isEnabled() {
+            return this.inputCache != null;
+        }
+
         public void save() {
             if (this.inputCache != null) {
                 try {
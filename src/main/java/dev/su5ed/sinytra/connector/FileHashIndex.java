@@ -0,0 +1,132 @@
+package dev.su5ed.sinytra.connector;
+
+import com.google.common.base.Suppliers;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Persistent index of input file checksums, keyed by absolute path, file size and last modification time.
+ * Allows us to skip hashing jars whose metadata hasn't changed since the previous launch.
+ * Files that are not present in the index, or whose metadata differs, are hashed in a streaming
+ * manner without reading their entire contents into memory.
+ */
+public final class FileHashIndex {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String HEADER = "# Connector file hash index v1";
+    private static final Path INDEX_PATH = ConnectorUtil.CONNECTOR_FOLDER.resolve("file_hashes.txt");
+    private static final Supplier<FileHashIndex> INSTANCE = Suppliers.memoize(() -> new FileHashIndex(INDEX_PATH));
+
+    private final Path path;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    public static FileHashIndex get() {
+        return INSTANCE.get();
+    }
+
+    private FileHashIndex(Path path) {
+        this.path = path;
+        read();
+    }
+
+    /**
+     * Get the SHA-256 checksum of a file, reusing the indexed value if the file's size and
+     * modification time haven't changed since it was last hashed.
+     *
+     * @param file the file to hash
+     * @return the hex-encoded checksum
+     */
+    public String getHash(Path file) throws IOException {
+        // Files inside of archives don't have reliable metadata, so we always hash them directly
+        if (file.getFileSystem() != FileSystems.getDefault()) {
+            return computeHash(file);
+        }
+        Path absolute = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String key = absolute.toString();
+
+        Entry existing = this.entries.get(key);
+        if (existing != null && existing.size() == size && existing.lastModified() == lastModified) {
+            return existing.hash();
+        }
+        String hash = computeHash(absolute);
+        this.entries.put(key, new Entry(size, lastModified, hash));
+        this.dirty = true;
+        return hash;
+    }
+
+    /**
+     * Hash a file's contents by streaming it through the digest.
+     */
+    public static String computeHash(Path file) throws IOException {
+        return MoreFiles.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
+    /**
+     * Write the index to disk if it has been modified, dropping entries of files that no longer exist.
+     */
+    public synchronized void save() {
+        if (!this.dirty) {
+            return;
+        }
+        this.entries.keySet().removeIf(key -> Files.notExists(Path.of(key)));
+        try {
+            Files.createDirectories(this.path.getParent());
+            Path temp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                    Entry value = entry.getValue();
+                    writer.write(value.hash() + "\t" + value.size() + "\t" + value.lastModified() + "\t" + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING);
+            this.dirty = false;
+        } catch (IOException e) {
+            LOGGER.error("Error writing file hash index", e);
+        }
+    }
+
+    private void read() {
+        if (Files.notExists(this.path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(this.path)) {
+            String header = reader.readLine();
+            if (!HEADER.equals(header)) {
+                LOGGER.debug("Ignoring outdated file hash index {}", this.path);
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 4);
+                if (parts.length == 4) {
+                    this.entries.put(parts[3], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[0]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.error("Error reading file hash index, all inputs will be rehashed", e);
+            this.entries.clear();
+        }
+    }
+
+    private record Entry(long size, long lastModified, String hash) {}
+}
@@ -2,13 +2,14 @@ package dev.su5ed.sinytra.connector.locator;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.mojang.datafixers.util.Pair;
 import com.mojang.logging.LogUtils;
 import cpw.mods.jarhandling.SecureJar;
 import dev.su5ed.sinytra.connector.ConnectorUtil;
 import dev.su5ed.sinytra.connector.loader.ConnectorEarlyLoader;
 import dev.su5ed.sinytra.connector.loader.ConnectorLoaderModMetadata;
 import dev.su5ed.sinytra.connector.transformer.jar.JarTransformer;
-import net.fabricmc.loader.impl.metadata.NestedJarEntry;
+import dev.su5ed.sinytra.connector.transformer.jar.WideningManifest;
 import net.minecraftforge.fml.loading.ClasspathLocatorUtils;
 import net.minecraftforge.fml.loading.EarlyLoadingException;
 import net.minecraftforge.fml.loading.FMLEnvironment;
@@ -85,9 +86,21 @@ public class ConnectorLocator extends AbstractJarFileModProvider implements IDep
         }
     }
 
-    private List<IModFile> locateFabricMods(Iterable<IModFile> loadedMods) {
+    private List<IModFile> locateFabricMods(Iterable<IModFile> loadedMods) throws IOException {
         LOGGER.debug(SCAN, "Scanning mods dir {} for mods", FMLPaths.MODSDIR.get());
-        Path tempDir = ConnectorUtil.CONNECTOR_FOLDER.resolve("temp");
+        List<Path> candidatePaths = Stream.concat(scanModsDir(), scanClasspath()).toList();
+        // Reuse the previous launch's outcome if neither mods nor configuration have changed since
+        String fingerprint = LaunchPlan.computeFingerprint(candidatePaths, loadedMods);
+        LaunchPlan plan = fingerprint != null ? LaunchPlan.read(fingerprint, loadedMods) : null;
+        if (plan != null) {
+            List<JarTransformer.FabricModPath> transformed = plan.getTransformedJars();
+            if (transformed != null) {
+                LOGGER.info(SCAN, "Mod set is unchanged, loading {} transformed jars from previous launch", transformed.size());
+                DependencyResolver.applyGlobalModAliases();
+                WideningManifest.save(transformed);
+                return createModFiles(transformed, loadedMods, plan.ignoredModFiles());
+            }
+        }
         // Get all existing mod ids
         Collection<SimpleModInfo> loadedModInfos = StreamSupport.stream(loadedMods.spliterator(), false)
             .flatMap(modFile -> Optional.ofNullable(modFile.getModFileInfo()).stream())
@@ -102,24 +115,21 @@ public class ConnectorLocator extends AbstractJarFileModProvider implements IDep
             })
             .toList();
         Collection<String> loadedModIds = loadedModInfos.stream().filter(mod -> !mod.library()).map(SimpleModInfo::modid).collect(Collectors.toUnmodifiableSet());
-        // Discover fabric mod jars
-        List<JarTransformer.TransformableJar> discoveredJars = Stream.concat(scanModsDir(), scanClasspath())
-            .map(rethrowFunction(p -> cacheTransformableJar(p.toFile())))
-            .filter(jar -> {
-                String modid = jar.modPath().metadata().modMetadata().getId();
-                return !shouldIgnoreMod(modid, loadedModIds);
-            })
+        // Discover fabric mod jars, scanning each candidate archive once in parallel
+        List<Pair<JarScan, JarTransformer.TransformableJar>> discovered = candidatePaths.parallelStream()
+            .map(rethrowFunction(path -> JarScan.scan(JarSource.of(path))))
+            .filter(ConnectorLocator::isFabricModJar)
+            .filter(scan -> !shouldIgnoreMod(scan.metadata().modMetadata().getId(), loadedModIds))
+            .map(rethrowFunction(scan -> Pair.of(scan, cacheTransformableJar(scan.source(), scan.metadata()))))
             .toList();
+        List<JarTransformer.TransformableJar> discoveredJars = discovered.stream().map(Pair::getSecond).toList();
         Multimap<JarTransformer.TransformableJar, JarTransformer.TransformableJar> parentToChildren = HashMultimap.create();
         // Discover fabric nested mod jars
-        List<JarTransformer.TransformableJar> discoveredNestedJars = discoveredJars.stream()
-            .flatMap(jar -> {
-                ConnectorLoaderModMetadata metadata = jar.modPath().metadata().modMetadata();
-                return shouldIgnoreMod(metadata.getId(), loadedModIds) ? Stream.empty() : discoverNestedJarsRecursive(tempDir, jar, metadata.getJars(), parentToChildren, loadedModIds);
-            })
+        List<JarTransformer.TransformableJar> discoveredNestedJars = discovered.stream()
+            .flatMap(pair -> discoverNestedJarsRecursive(pair.getFirst(), pair.getSecond(), parentToChildren, loadedModIds))
             .toList();
         // Collect mods that are (likely) going to be excluded by FML's UniqueModListBuilder. Exclude them from global split package filtering
-        Collection<? super IModFile> ignoredModFiles = new ArrayList<>();
+        List<IModFile> ignoredModFiles = new ArrayList<>();
         // Remove mods loaded by FML
         List<JarTransformer.TransformableJar> uniqueJars = handleDuplicateMods(discoveredJars, discoveredNestedJars, loadedModInfos, ignoredModFiles);
         // Ensure we have all required dependencies before transforming
@@ -134,6 +144,14 @@ public class ConnectorLocator extends AbstractJarFileModProvider implements IDep
             LOGGER.error("Cancelling jar discovery due to previous error");
             return List.of();
         }
+        List<IModFile> modFiles = createModFiles(transformed, loadedMods, ignoredModFiles);
+        if (fingerprint != null) {
+            LaunchPlan.write(fingerprint, candidates, transformed, ignoredModFiles);
+        }
+        return modFiles;
+    }
+
+    private List<IModFile> createModFiles(List<JarTransformer.FabricModPath> transformed, Iterable<IModFile> loadedMods, Collection<IModFile> ignoredModFiles) {
         // Deal with split packages (thanks modules)
         List<SplitPackageMerger.FilteredModPath> moduleSafeJars = SplitPackageMerger.mergeSplitPackages(transformed, loadedMods, ignoredModFiles);
 
@@ -150,8 +168,7 @@ public class ConnectorLocator extends AbstractJarFileModProvider implements IDep
         List<Path> excluded = ModDirTransformerDiscoverer.allExcluded();
         return uncheck(() -> Files.list(FMLPaths.MODSDIR.get()))
             .filter(p -> !excluded.contains(p) && StringUtils.toLowerCase(p.getFileName().toString()).endsWith(SUFFIX))
-            .sorted(Comparator.comparing(path -> StringUtils.toLowerCase(path.getFileName().toString())))
-            .filter(ConnectorLocator::isFabricModJar);
+            .sorted(Comparator.comparing(path -> StringUtils.toLowerCase(path.getFileName().toString())));
     }
 
     private Stream<Path> scanClasspath() {
@@ -165,7 +182,7 @@ public class ConnectorLocator extends AbstractJarFileModProvider implements IDep
             while (resources.hasMoreElements()) {
                 URL url = resources.nextElement();
                 Path path = ClasspathLocatorUtils.findJarPathFor(ConnectorUtil.FABRIC_MOD_JSON, ConnectorUtil.FABRIC_MOD_JSON, url);
-                if (claimed.stream().noneMatch(path::equals) && Files.exists(path) && !Files.isDirectory(path) && isFabricModJar(path)) {
+                if (claimed.stream().noneMatch(path::equals) && Files.exists(path) && !Files.isDirectory(path)) {
                     ret.add(path);
                 }
             }
@@ -192,48 +209,35 @@ public class ConnectorLocator extends AbstractJarFileModProvider implements IDep
         return moe.file();
     }
 
-    private static boolean isFabricModJar(Path path) {
-        SecureJar secureJar = SecureJar.from(path);
-        String name = secureJar.name();
-        if (secureJar.moduleDataProvider().findFile(ConnectorUtil.MODS_TOML).isPresent()) {
-            LOGGER.debug(SCAN, "Skipping jar {} as it contains a mods.toml file", path);
+    private static boolean isFabricModJar(JarScan scan) {
+        if (scan.containsModsToml() && !scan.source().isNested()) {
+            LOGGER.debug(SCAN, "Skipping jar {} as it contains a mods.toml file", scan.source());
             return false;
         }
-        if (secureJar.moduleDataProvider().findFile(ConnectorUtil.FABRIC_MOD_JSON).isPresent()) {
-            LOGGER.debug(SCAN, "Found {} mod: {}", ConnectorUtil.FABRIC_MOD_JSON, path);
+        if (scan.metadata() != null) {
+            LOGGER.debug(SCAN, "Found {} mod: {}", ConnectorUtil.FABRIC_MOD_JSON, scan.source());
             return true;
         }
-        LOGGER.info(SCAN, "Fabric mod metadata not found in jar {}, ignoring", name);
+        LOGGER.info(SCAN, "Fabric mod metadata not found in jar {}, ignoring", scan.source());
         return false;
     }
 
-    private static Stream<JarTransformer.TransformableJar> discoverNestedJarsRecursive(Path tempDir, JarTransformer.TransformableJar parent, Collection<NestedJarEntry> jars, Multimap<JarTransformer.TransformableJar, JarTransformer.TransformableJar> parentToChildren, Collection<String> loadedModIds) {
-        SecureJar secureJar = SecureJar.from(parent.input().toPath());
-        return jars.stream()
-            .map(entry -> secureJar.getPath(entry.getFile()))
-            .filter(Files::exists)
-            .flatMap(path -> {
-                JarTransformer.TransformableJar jar = uncheck(() -> prepareNestedJar(tempDir, secureJar.getPrimaryPath().getFileName().toString(), path));
-                ConnectorLoaderModMetadata metadata = jar.modPath().metadata().modMetadata();
+    private static Stream<JarTransformer.TransformableJar> discoverNestedJarsRecursive(JarScan parentScan, JarTransformer.TransformableJar parent, Multimap<JarTransformer.TransformableJar, JarTransformer.TransformableJar> parentToChildren, Collection<String> loadedModIds) {
+        return parentScan.nestedJars().stream()
+            // Nested jars are read directly from their parent, without extracting them
+            .map(nested -> uncheck(() -> JarScan.scan(parentScan.source().nested(nested))))
+            .filter(ConnectorLocator::isFabricModJar)
+            .flatMap(scan -> {
+                ConnectorLoaderModMetadata metadata = scan.metadata().modMetadata();
                 if (shouldIgnoreMod(metadata.getId(), loadedModIds)) {
                     return Stream.empty();
                 }
+                JarTransformer.TransformableJar jar = uncheck(() -> cacheTransformableJar(scan.source(), scan.metadata()));
                 parentToChildren.put(parent, jar);
-                return Stream.concat(Stream.of(jar), discoverNestedJarsRecursive(tempDir, jar, metadata.getJars(), parentToChildren, loadedModIds));
+                return Stream.concat(Stream.of(jar), discoverNestedJarsRecursive(scan, jar, parentToChildren, loadedModIds));
             });
     }
 
-    private static JarTransformer.TransformableJar prepareNestedJar(Path tempDir, String parentName, Path path) throws IOException {
-        Files.createDirectories(tempDir);
-
-        String parentNameWithoutExt = parentName.split("\\.(?!.*\\.)")[0];
-        // Extract JiJ
-        Path extracted = tempDir.resolve(parentNameWithoutExt + "$" + path.getFileName().toString());
-        ConnectorUtil.cache(path, extracted, () -> Files.copy(path, extracted));
-
-        return uncheck(() -> JarTransformer.cacheTransformableJar(extracted.toFile()));
-    }
-
     // Removes any duplicates from located connector mods, as well as mods that are already located by FML.
     private static List<JarTransformer.TransformableJar> handleDuplicateMods(List<JarTransformer.TransformableJar> rootMods, List<JarTransformer.TransformableJar> nestedMods, Collection<SimpleModInfo> loadedMods, Collection<? super IModFile> ignoredModFiles) {
         return Stream.concat(rootMods.stream(), nestedMods.stream())
@@ -42,6 +42,9 @@ public final class EmbeddedDependencies {
     private static final String ADAPTER_DATA_PATH = "adapter_data";
     public static final String ADAPTER_PATCH_DATA = "patch_data.json";
     public static final String ADAPTER_LVT_OFFSETS = "lvt_offsets.json";
+    // Binary adapter data indexed by target class, compiled at build time
+    public static final String ADAPTER_PATCH_DATA_INDEX = "patch_data.bin";
+    public static final String ADAPTER_LVT_OFFSETS_INDEX = "lvt_offsets.bin";
     // Path to the jar this class is loaded from
     private static final Path SELF_PATH = uncheck(() -> {
         URL jarLocation = ConnectorLocator.class.getProtectionDomain().getCodeSource().getLocation();
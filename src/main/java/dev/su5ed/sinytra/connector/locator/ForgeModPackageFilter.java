@@ -40,7 +40,7 @@ public final class ForgeModPackageFilter {
         Set<String> common = Sets.intersection(packages, existingPackages);
         if (!common.isEmpty() && jar instanceof Jar jarImpl) {
             LOGGER.debug("Filtering {} packages from mod file {}", common.size(), jar.getPrimaryPath().getFileName());
-            BiPredicate<String, String> filter = new PackageTracker(common);
+            PackageTracker filter = new PackageTracker(common);
             // Get FS instance from jar root path
             FileSystem jarFS = jarImpl.getRootPath().getFileSystem();
             // Make sure it's a UFS instance just in case
@@ -53,10 +53,9 @@ public final class ForgeModPackageFilter {
         }
     }
 
-    private static void injectUFSFilter(UnionFileSystem ufs, BiPredicate<String, String> filter) {
+    private static void injectUFSFilter(UnionFileSystem ufs, PackageTracker filter) {
         // Merge the existing filter if present
-        BiPredicate<String, String> existing = ufs.getFilesystemFilter();
-        BiPredicate<String, String> merged = existing != null ? existing.and(filter) : filter;
+        BiPredicate<String, String> merged = PackageTracker.merge(ufs.getFilesystemFilter(), filter);
 
         // Inject filter into UFS
         Field pathFilterField = uncheck(() -> UnionFileSystem.class.getDeclaredField("pathFilter"));
@@ -0,0 +1,244 @@
+package dev.su5ed.sinytra.connector.locator;
+
+import com.mojang.logging.LogUtils;
+import dev.su5ed.sinytra.connector.ConnectorUtil;
+import dev.su5ed.sinytra.connector.loader.ConnectorLoaderModMetadata;
+import dev.su5ed.sinytra.connector.transformer.jar.JarTransformer;
+import net.fabricmc.loader.impl.metadata.NestedJarEntry;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import static net.minecraftforge.fml.loading.LogMarkers.SCAN;
+
+/**
+ * Discovery information about a candidate jar, gathered with a single pass over the archive's central directory.
+ * Later discovery stages reuse the scan instead of reopening the archive.
+ * <p>
+ * Scans are persisted next to the jar's transformed output and reused for as long as the input's cache key
+ * remains the same, so that unchanged jars don't need to be opened at all.
+ * <p>
+ * File layout:
+ * <pre>
+ * int magic, int version, UTF cache key, boolean containsModsToml, boolean hasMetadata
+ * if metadata: int length, UTF-8 encoded fabric.mod.json, boolean containsAT, boolean generated,
+ *   string lists of visible mixin configs, mixin configs, refmaps, mixin packages and packages,
+ *   int count, (UTF name, long crc) per nested jar,
+ *   int count, (UTF name, UTF value) per manifest main attribute
+ * </pre>
+ * String lists are stored as an int count followed by UTF strings.
+ *
+ * @param source           the scanned jar
+ * @param containsModsToml whether the jar contains a forge mods.toml file
+ * @param modJson          contents of the jar's fabric.mod.json file, or {@code null} if it has none
+ * @param metadata         fabric mod metadata, or {@code null} if the jar has no fabric.mod.json
+ * @param nestedJars       nested jar entries declared in mod metadata and present in the jar
+ */
+public record JarScan(JarSource source, boolean containsModsToml, @Nullable String modJson, @Nullable JarTransformer.FabricModFileMetadata metadata, List<NestedJar> nestedJars) {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String META_INF = "META-INF/";
+    private static final String SCAN_SUFFIX = ".scan";
+    private static final int MAGIC = 0x434E5343; // CNSC
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * {@return whether the jar is loaded as a fabric mod}
+     * Nested jars are declared by their parent's fabric metadata, so they are loaded even if they contain a mods.toml.
+     */
+    public boolean isFabricMod() {
+        return this.metadata != null && (!this.containsModsToml || this.source.isNested());
+    }
+
+    /**
+     * Scan a jar, reusing the persisted scan if the jar hasn't changed since it was written.
+     */
+    public static JarScan scan(JarSource source) throws IOException {
+        String cacheKey = source.getCacheKey();
+        if (cacheKey == null) {
+            return scanArchive(source);
+        }
+        Path scanFile = getScanFile(source);
+        if (Files.exists(scanFile)) {
+            try {
+                JarScan scan = read(source, scanFile, cacheKey);
+                if (scan != null) {
+                    return scan;
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn(SCAN, "Failed to read persisted scan {}, rescanning jar", scanFile, e);
+            }
+        }
+        JarScan scan = scanArchive(source);
+        Files.createDirectories(scanFile.getParent());
+        scan.write(scanFile, cacheKey);
+        return scan;
+    }
+
+    private static Path getScanFile(JarSource source) {
+        Path output = JarTransformer.getOutputPath(source.getInputFile().toFile());
+        return output.resolveSibling(output.getFileName() + SCAN_SUFFIX);
+    }
+
+    private static JarScan scanArchive(JarSource source) throws IOException {
+        try (ZipView zipView = source.open()) {
+            Collection<String> entryNames = zipView.getEntryNames();
+            Set<String> packages = new HashSet<>();
+            boolean containsModsToml = false;
+            boolean containsFabricModJson = false;
+            for (String name : entryNames) {
+                if (name.equals(ConnectorUtil.MODS_TOML)) {
+                    containsModsToml = true;
+                }
+                else if (name.equals(ConnectorUtil.FABRIC_MOD_JSON)) {
+                    containsFabricModJson = true;
+                }
+                else if (name.endsWith(CLASS_EXTENSION) && !name.startsWith(META_INF)) {
+                    int idx = name.lastIndexOf('/');
+                    if (idx > 0) {
+                        packages.add(name.substring(0, idx).replace('/', '.'));
+                    }
+                }
+            }
+            if (!containsFabricModJson) {
+                return new JarScan(source, containsModsToml, null, null, List.of());
+            }
+            String modJson;
+            try (InputStream is = zipView.getInputStream(zipView.getEntry(ConnectorUtil.FABRIC_MOD_JSON))) {
+                modJson = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            Attributes manifestAttributes = readManifestAttributes(zipView);
+            JarTransformer.FabricModFileMetadata metadata = JarTransformer.readModMetadata(source, zipView, entryNames, manifestAttributes, packages, modJson);
+            List<NestedJar> nestedJars = metadata.modMetadata().getJars().stream()
+                .map(NestedJarEntry::getFile)
+                .map(zipView::getEntry)
+                .filter(Objects::nonNull)
+                .map(entry -> new NestedJar(entry.name(), entry.crc()))
+                .toList();
+            return new JarScan(source, false, modJson, metadata, nestedJars);
+        }
+    }
+
+    @Nullable
+    private static JarScan read(JarSource source, Path scanFile, String cacheKey) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(scanFile)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION || !dis.readUTF().equals(cacheKey)) {
+                return null;
+            }
+            boolean containsModsToml = dis.readBoolean();
+            if (!dis.readBoolean()) {
+                return new JarScan(source, containsModsToml, null, null, List.of());
+            }
+            byte[] modJsonBytes = new byte[dis.readInt()];
+            dis.readFully(modJsonBytes);
+            String modJson = new String(modJsonBytes, StandardCharsets.UTF_8);
+            boolean containsAT = dis.readBoolean();
+            boolean generated = dis.readBoolean();
+            List<String> visibleConfigs = readStrings(dis);
+            List<String> configs = readStrings(dis);
+            List<String> refmaps = readStrings(dis);
+            List<String> mixinPackages = readStrings(dis);
+            List<String> packages = readStrings(dis);
+            int nestedCount = dis.readInt();
+            List<NestedJar> nestedJars = new ArrayList<>(nestedCount);
+            for (int i = 0; i < nestedCount; i++) {
+                nestedJars.add(new NestedJar(dis.readUTF(), dis.readLong()));
+            }
+            Attributes manifestAttributes = new Attributes();
+            int attributeCount = dis.readInt();
+            for (int i = 0; i < attributeCount; i++) {
+                manifestAttributes.putValue(dis.readUTF(), dis.readUTF());
+            }
+            ConnectorLoaderModMetadata modMetadata = JarTransformer.parseModMetadata(modJson);
+            JarTransformer.FabricModFileMetadata metadata = new JarTransformer.FabricModFileMetadata(modMetadata, Set.copyOf(visibleConfigs), new HashSet<>(configs), new HashSet<>(refmaps),
+                new HashSet<>(mixinPackages), manifestAttributes, Set.copyOf(packages), containsAT, generated);
+            return new JarScan(source, containsModsToml, modJson, metadata, nestedJars);
+        }
+    }
+
+    private void write(Path scanFile, String cacheKey) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(scanFile)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeUTF(cacheKey);
+            dos.writeBoolean(this.containsModsToml);
+            dos.writeBoolean(this.metadata != null);
+            if (this.metadata != null) {
+                byte[] modJsonBytes = this.modJson.getBytes(StandardCharsets.UTF_8);
+                dos.writeInt(modJsonBytes.length);
+                dos.write(modJsonBytes);
+                dos.writeBoolean(this.metadata.containsAT());
+                dos.writeBoolean(this.metadata.generated());
+                writeStrings(dos, this.metadata.visibleMixinConfigs());
+                writeStrings(dos, this.metadata.mixinConfigs());
+                writeStrings(dos, this.metadata.refmaps());
+                writeStrings(dos, this.metadata.mixinPackages());
+                writeStrings(dos, this.metadata.packages());
+                dos.writeInt(this.nestedJars.size());
+                for (NestedJar jar : this.nestedJars) {
+                    dos.writeUTF(jar.name());
+                    dos.writeLong(jar.crc());
+                }
+                Attributes attributes = this.metadata.manifestAttributes();
+                dos.writeInt(attributes.size());
+                for (Map.Entry<Object, Object> entry : attributes.entrySet()) {
+                    dos.writeUTF(entry.getKey().toString());
+                    dos.writeUTF(entry.getValue().toString());
+                }
+            }
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream dis) throws IOException {
+        int count = dis.readInt();
+        List<String> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(dis.readUTF());
+        }
+        return list;
+    }
+
+    private static void writeStrings(DataOutputStream dos, Collection<String> strings) throws IOException {
+        dos.writeInt(strings.size());
+        for (String str : strings) {
+            dos.writeUTF(str);
+        }
+    }
+
+    private static Attributes readManifestAttributes(ZipView zipView) throws IOException {
+        ZipView.Entry entry = zipView.getEntry(JarFile.MANIFEST_NAME);
+        if (entry == null) {
+            return new Attributes();
+        }
+        try (InputStream is = zipView.getInputStream(entry)) {
+            return new Manifest(is).getMainAttributes();
+        }
+    }
+
+    /**
+     * A jar nested inside of a scanned jar.
+     *
+     * @param name the nested jar entry name
+     * @param crc  CRC-32 of the nested jar's contents
+     */
+    public record NestedJar(String name, long crc) {}
+}
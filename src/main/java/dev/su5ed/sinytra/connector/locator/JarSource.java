@@ -0,0 +1,124 @@
+package dev.su5ed.sinytra.connector.locator;
+
+import dev.su5ed.sinytra.connector.ConnectorUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * Location of a candidate jar, which is either a file on disk or an entry nested (possibly several levels deep)
+ * inside of one. Nested jars are read directly from their parent archive and are only extracted to the
+ * temp folder once their contents are needed as a file, e.g. for transforming them.
+ *
+ * @param file    the root jar file
+ * @param nesting nested jar entries leading from the root jar to this jar, outermost first
+ */
+public record JarSource(Path file, List<JarScan.NestedJar> nesting) {
+    private static final Path TEMP_DIR = ConnectorUtil.CONNECTOR_FOLDER.resolve("temp");
+
+    public static JarSource of(Path file) {
+        return new JarSource(file, List.of());
+    }
+
+    public JarSource nested(JarScan.NestedJar jar) {
+        List<JarScan.NestedJar> nesting = new ArrayList<>(this.nesting);
+        nesting.add(jar);
+        return new JarSource(this.file, List.copyOf(nesting));
+    }
+
+    public boolean isNested() {
+        return !this.nesting.isEmpty();
+    }
+
+    /**
+     * {@return the key identifying cached data derived from this jar, or {@code null} if caching is disabled}
+     * Nested jars are identified by their root jar's hash along with the path and CRC of each nested entry.
+     */
+    @Nullable
+    public String getCacheKey() throws IOException {
+        String key = ConnectorUtil.getCacheKey(this.file);
+        if (key == null) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(key);
+        for (JarScan.NestedJar jar : this.nesting) {
+            builder.append(',').append(jar.name()).append('@').append(Long.toHexString(jar.crc()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * {@return the file this jar is read from when it's used outside of discovery}
+     * For nested jars, this is the location they are extracted to by {@link #extract()}.
+     */
+    public Path getInputFile() {
+        if (!isNested()) {
+            return this.file;
+        }
+        String name = this.file.getFileName().toString();
+        for (JarScan.NestedJar jar : this.nesting) {
+            String nameWithoutExt = name.split("\\.(?!.*\\.)")[0];
+            String entryName = jar.name();
+            name = nameWithoutExt + "$" + entryName.substring(entryName.lastIndexOf('/') + 1);
+        }
+        return TEMP_DIR.resolve(name);
+    }
+
+    public ZipView open() throws IOException {
+        ZipView view = ZipView.open(this.file);
+        try {
+            for (JarScan.NestedJar jar : this.nesting) {
+                view = view.openNested(getNestedEntry(view, jar.name()));
+            }
+            return view;
+        } catch (IOException | RuntimeException e) {
+            view.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Extract a nested jar to its {@link #getInputFile() input file}, unless an up-to-date copy already exists.
+     * Does nothing for jars that aren't nested.
+     */
+    public void extract() throws IOException {
+        if (!isNested()) {
+            return;
+        }
+        Path extracted = getInputFile();
+        ConnectorUtil.CacheFile cacheFile = ConnectorUtil.getCachedByKey(getCacheKey(), extracted);
+        if (!cacheFile.isUpToDate()) {
+            Files.createDirectories(extracted.getParent());
+            List<JarScan.NestedJar> parentNesting = this.nesting.subList(0, this.nesting.size() - 1);
+            try (ZipView parent = new JarSource(this.file, parentNesting).open();
+                 InputStream is = parent.getInputStream(getNestedEntry(parent, this.nesting.get(this.nesting.size() - 1).name()))) {
+                Files.copy(is, extracted, StandardCopyOption.REPLACE_EXISTING);
+            }
+            cacheFile.save();
+        }
+    }
+
+    private ZipView.Entry getNestedEntry(ZipView view, String name) throws IOException {
+        ZipView.Entry entry = view.getEntry(name);
+        if (entry == null) {
+            throw new ZipException("Nested jar " + name + " not found in " + this.file);
+        }
+        return entry;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(this.file.toString());
+        for (JarScan.NestedJar jar : this.nesting) {
+            builder.append('!').append(jar.name());
+        }
+        return builder.toString();
+    }
+}
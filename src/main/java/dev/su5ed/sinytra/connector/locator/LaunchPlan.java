@@ -0,0 +1,218 @@
+package dev.su5ed.sinytra.connector.locator;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.mojang.logging.LogUtils;
+import dev.su5ed.sinytra.connector.ConnectorUtil;
+import dev.su5ed.sinytra.connector.transformer.jar.JarTransformer;
+import dev.su5ed.sinytra.connector.transformer.jar.JarTransformer.FabricModPath;
+import dev.su5ed.sinytra.connector.transformer.jar.WideningManifest;
+import net.minecraftforge.fml.loading.FMLEnvironment;
+import net.minecraftforge.fml.loading.FMLPaths;
+import net.minecraftforge.forgespi.locating.IModFile;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.minecraftforge.fml.loading.LogMarkers.SCAN;
+
+/**
+ * The outcome of fabric mod discovery from a previous launch, consisting of the jars that were loaded, the forge
+ * mods that were excluded from split package filtering and whether the generated adapter jar was loaded. When a launch's fingerprint matches the persisted plan,
+ * the locator loads the previous jars directly instead of resolving, deduplicating and transforming mods again.
+ * <p>
+ * File layout:
+ * <pre>
+ * int magic, int version, UTF fingerprint,
+ * int count, UTF path per ignored forge mod file, boolean generated adapter jar,
+ * int count, per jar: UTF root file path, int count, (UTF name, long crc) per nested jar entry
+ * </pre>
+ *
+ * @param jars            sources of all loaded fabric mod jars, in load order
+ * @param ignoredModFiles forge mod files excluded from split package filtering
+ * @param generatedJar    whether the generated adapter jar existed
+ */
+public record LaunchPlan(List<JarSource> jars, List<IModFile> ignoredModFiles, boolean generatedJar) {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final Path PLAN_PATH = ConnectorUtil.CONNECTOR_FOLDER.resolve("launch_plan.bin");
+    private static final int MAGIC = 0x434E4C50; // CNLP
+    private static final int FORMAT_VERSION = 2;
+    private static final List<String> CONFIG_FILES = List.of("connector.json", "connector_global_mod_aliases.json", "fabric_loader_dependencies.json");
+
+    /**
+     * Compute a fingerprint of everything that affects discovery: candidate jars, loaded forge mods,
+     * the Connector version and its configuration. Jars are identified by their path, size and modification time.
+     *
+     * @param candidates candidate jars found in the mods folder and on the classpath
+     * @param loadedMods mods located by FML
+     * @return the fingerprint, or {@code null} if caching is disabled
+     */
+    @Nullable
+    public static String computeFingerprint(List<Path> candidates, Iterable<IModFile> loadedMods) throws IOException {
+        String cacheVersion = ConnectorUtil.getCacheKey(null);
+        if (cacheVersion == null) {
+            return null;
+        }
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(cacheVersion, StandardCharsets.UTF_8);
+        hasher.putString(FMLEnvironment.dist.name(), StandardCharsets.UTF_8);
+        for (Path candidate : candidates) {
+            SplitPackageMerger.putFile(hasher, candidate);
+        }
+        hasher.putByte((byte) 0);
+        for (IModFile modFile : loadedMods) {
+            SplitPackageMerger.putFile(hasher, modFile.getFilePath());
+        }
+        hasher.putByte((byte) 0);
+        Path configDir = FMLPaths.CONFIGDIR.get();
+        for (String name : CONFIG_FILES) {
+            Path path = configDir.resolve(name);
+            if (Files.exists(path)) {
+                hasher.putBoolean(true);
+                hasher.putBytes(Files.readAllBytes(path));
+            }
+            else {
+                hasher.putBoolean(false);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Read the persisted plan.
+     *
+     * @param fingerprint the current launch fingerprint
+     * @param loadedMods  mods located by FML
+     * @return the plan, or {@code null} if there is no plan matching the fingerprint
+     */
+    @Nullable
+    public static LaunchPlan read(String fingerprint, Iterable<IModFile> loadedMods) {
+        if (Files.notExists(PLAN_PATH)) {
+            return null;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(PLAN_PATH)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION || !dis.readUTF().equals(fingerprint)) {
+                return null;
+            }
+            Map<String, IModFile> modFilesByPath = new HashMap<>();
+            for (IModFile modFile : loadedMods) {
+                modFilesByPath.put(modFile.getFilePath().toAbsolutePath().toString(), modFile);
+            }
+            int ignoredCount = dis.readInt();
+            List<IModFile> ignoredModFiles = new ArrayList<>(ignoredCount);
+            for (int i = 0; i < ignoredCount; i++) {
+                IModFile modFile = modFilesByPath.get(dis.readUTF());
+                if (modFile == null) {
+                    return null;
+                }
+                ignoredModFiles.add(modFile);
+            }
+            boolean generatedJar = dis.readBoolean();
+            int jarCount = dis.readInt();
+            List<JarSource> jars = new ArrayList<>(jarCount);
+            for (int i = 0; i < jarCount; i++) {
+                JarSource source = JarSource.of(Path.of(dis.readUTF()));
+                int nestingCount = dis.readInt();
+                for (int j = 0; j < nestingCount; j++) {
+                    source = source.nested(new JarScan.NestedJar(dis.readUTF(), dis.readLong()));
+                }
+                jars.add(source);
+            }
+            return new LaunchPlan(jars, ignoredModFiles, generatedJar);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn(SCAN, "Failed to read launch plan {}", PLAN_PATH, e);
+            return null;
+        }
+    }
+
+    /**
+     * Persist the outcome of discovery. Failures are logged, as they only affect the next launch's startup time.
+     *
+     * @param fingerprint     the current launch fingerprint
+     * @param candidates      all jars passed to the transformer
+     * @param transformed     transformed jars in load order
+     * @param ignoredModFiles forge mod files excluded from split package filtering
+     */
+    public static void write(String fingerprint, Collection<JarTransformer.TransformableJar> candidates, List<FabricModPath> transformed, Collection<IModFile> ignoredModFiles) {
+        Map<Path, JarSource> sources = new HashMap<>();
+        for (JarTransformer.TransformableJar jar : candidates) {
+            sources.put(jar.modPath().path(), jar.source());
+        }
+        try {
+            Files.createDirectories(PLAN_PATH.getParent());
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(PLAN_PATH)))) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeUTF(fingerprint);
+                dos.writeInt(ignoredModFiles.size());
+                for (IModFile modFile : ignoredModFiles) {
+                    dos.writeUTF(modFile.getFilePath().toAbsolutePath().toString());
+                }
+                dos.writeBoolean(Files.exists(JarTransformer.getGeneratedJarPath()));
+                dos.writeInt(transformed.size());
+                for (FabricModPath modPath : transformed) {
+                    JarSource source = sources.get(modPath.path());
+                    if (source == null) {
+                        throw new IOException("Missing source for transformed jar " + modPath.path());
+                    }
+                    dos.writeUTF(source.file().toAbsolutePath().toString());
+                    dos.writeInt(source.nesting().size());
+                    for (JarScan.NestedJar nested : source.nesting()) {
+                        dos.writeUTF(nested.name());
+                        dos.writeLong(nested.crc());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error(SCAN, "Failed to write launch plan {}", PLAN_PATH, e);
+            try {
+                Files.deleteIfExists(PLAN_PATH);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * {@return the transformed jars of this plan, or {@code null} if any of them are no longer up-to-date}
+     * Jar metadata is read from persisted jar scans. Besides the jars themselves, their widening manifests and the
+     * generated adapter jar must still exist, as the merged widening manifest is rebuilt from them.
+     */
+    @Nullable
+    public List<FabricModPath> getTransformedJars() throws IOException {
+        List<FabricModPath> transformed = new ArrayList<>(this.jars.size());
+        for (JarSource source : this.jars) {
+            JarScan scan = JarScan.scan(source);
+            if (!scan.isFabricMod()) {
+                return null;
+            }
+            JarTransformer.TransformableJar jar = JarTransformer.cacheTransformableJar(source, scan.metadata());
+            if (!jar.cacheFile().isUpToDate()) {
+                LOGGER.debug(SCAN, "Transformed jar {} is outdated, discarding launch plan", jar.modPath().path());
+                return null;
+            }
+            if (!WideningManifest.hasJarManifest(jar.modPath().path())) {
+                LOGGER.debug(SCAN, "Transformed jar {} is missing its widening manifest, discarding launch plan", jar.modPath().path());
+                return null;
+            }
+            transformed.add(jar.modPath());
+        }
+        Path generatedJar = JarTransformer.getGeneratedJarPath();
+        if (this.generatedJar && (Files.notExists(generatedJar) || !WideningManifest.hasJarManifest(generatedJar))) {
+            LOGGER.debug(SCAN, "Generated adapter jar {} or its widening manifest is missing, discarding launch plan", generatedJar);
+            return null;
+        }
+        return transformed;
+    }
+}
@@ -17,12 +17,60 @@
  */
 package dev.su5ed.sinytra.connector.locator;
 
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
 import java.util.Set;
 import java.util.function.BiPredicate;
 
 // Source
 // https://github.com/McModLauncher/bootstraplauncher/blob/09c1f9980369e01724d6e8842c23dcf8a53fb46d/src/main/java/cpw/mods/bootstraplauncher/BootstrapLauncher.java#L165-L179
-public record PackageTracker(Set<String> packages) implements BiPredicate<String, String> {
+/**
+ * A union file system path filter excluding files of a set of packages.
+ * Runs on every path lookup, so packages are compiled into an open addressing hash table of slash-separated names
+ * that is probed with the directory part of a path in place, without allocating.
+ */
+public final class PackageTracker implements BiPredicate<String, String> {
+    private final Set<String> packages;
+    private final String[] table;
+    private final int mask;
+
+    public PackageTracker(Set<String> packages) {
+        this.packages = Set.copyOf(packages);
+        // Keep the table at most half full
+        int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, this.packages.size()) * 2 - 1) << 1);
+        this.table = new String[capacity];
+        this.mask = capacity - 1;
+        for (String pkg : this.packages) {
+            String name = pkg.replace('.', '/');
+            int i = mix(name.hashCode()) & this.mask;
+            while (this.table[i] != null) {
+                i = (i + 1) & this.mask;
+            }
+            this.table[i] = name;
+        }
+    }
+
+    /**
+     * Combine a filter with an existing one. Package trackers are merged into a single tracker of all their packages,
+     * other filters are chained.
+     */
+    public static BiPredicate<String, String> merge(@Nullable BiPredicate<String, String> existing, PackageTracker filter) {
+        if (existing == null) {
+            return filter;
+        }
+        if (existing instanceof PackageTracker tracker) {
+            Set<String> packages = new HashSet<>(tracker.packages);
+            packages.addAll(filter.packages);
+            return new PackageTracker(packages);
+        }
+        return existing.and(filter);
+    }
+
+    public Set<String> packages() {
+        return this.packages;
+    }
+
     @Override
     public boolean test(final String path, final String basePath) {
         // This method returns true if the given path is allowed within the JAR (filters out 'bad' paths)
@@ -34,6 +82,27 @@ public record PackageTracker(Set<String> packages) implements BiPredicate<String
         int idx = path.lastIndexOf('/');
         return idx < 0 || // Resources at the root are allowed to co-exist
             idx == path.length() - 1 || // All directories can have a potential to exist without conflict, we only care about real files.
-            !this.packages.contains(path.substring(0, idx).replace('/', '.')); // If the package hasn't been used by a previous JAR
+            !containsPackage(path, idx); // If the package hasn't been used by a previous JAR
+    }
+
+    private boolean containsPackage(String path, int length) {
+        // Same as hashing path.substring(0, length)
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + path.charAt(i);
+        }
+        int i = mix(hash) & this.mask;
+        String name;
+        while ((name = this.table[i]) != null) {
+            if (name.length() == length && path.regionMatches(0, name, 0, length)) {
+                return true;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return false;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ hash >>> 16;
     }
 }
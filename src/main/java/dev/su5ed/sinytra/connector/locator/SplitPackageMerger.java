@@ -1,158 +1,281 @@
 package dev.su5ed.sinytra.connector.locator;
 
-import com.mojang.datafixers.util.Pair;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.mojang.logging.LogUtils;
 import cpw.mods.jarhandling.SecureJar;
 import cpw.mods.modlauncher.Launcher;
 import cpw.mods.modlauncher.api.IModuleLayerManager;
+import dev.su5ed.sinytra.connector.ConnectorUtil;
 import dev.su5ed.sinytra.connector.transformer.jar.JarTransformer;
 import dev.su5ed.sinytra.connector.transformer.jar.JarTransformer.FabricModPath;
 import net.minecraftforge.forgespi.locating.IModFile;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiPredicate;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class SplitPackageMerger {
     private static final Logger LOGGER = LogUtils.getLogger();
+    private static final Path PLAN_PATH = ConnectorUtil.CONNECTOR_FOLDER.resolve("split_packages.bin");
+    private static final int MAGIC = 0x434E5350; // CNSP
+    private static final int FORMAT_VERSION = 1;
+    private static final Collection<IModuleLayerManager.Layer> EXISTING_LAYERS = List.of(IModuleLayerManager.Layer.BOOT, IModuleLayerManager.Layer.SERVICE);
 
     /**
      * Detect and resolve split package conflicts in jars.
      * Supplied paths must point to valid jars paths usable by {@link SecureJar}.
+     * <p>
+     * The resulting merge plan is persisted along with a fingerprint of all jars and already loaded modules,
+     * and reused as long as the fingerprint doesn't change.
+     *
      * @param paths jar paths to process
      * @return a list of adjusted jar paths
      */
     public static List<FilteredModPath> mergeSplitPackages(List<FabricModPath> paths, Iterable<IModFile> existing, Collection<? super IModFile> ignoredModFiles) {
-        // Paths that don't contain conflicting jars
-        List<FabricModPath> plainPaths = new ArrayList<>(paths);
-        // Processed paths result
-        List<FilteredModPath> output = new ArrayList<>();
-
-        // Package name -> list of jars that contain the package
-        Map<String, List<Pair<SecureJar, FabricModPath>>> pkgSources = new HashMap<>();
-        for (FabricModPath modInfo : paths) {
-            SecureJar secureJar = SecureJar.from(modInfo.path());
-            for (String pkg : secureJar.getPackages()) {
-                pkgSources.computeIfAbsent(pkg, p -> new ArrayList<>()).add(Pair.of(secureJar, modInfo));
-            }
-        }
-
-        // Find all jars that need merging
-        // Keep track of the order jars were found in, for selecting package owners
-        List<SecureJar> jarOrder = new ArrayList<>();
-        // Map of packages that need merging and their sources
-        Map<String, List<Pair<SecureJar, FabricModPath>>> mergePkgs = new LinkedHashMap<>();
-        AtomicInteger totalJars = new AtomicInteger(0);
-        pkgSources.forEach((pkg, sources) -> {
-            if (sources.size() > 1) {
-                LOGGER.debug("Found split package {} in jars {}", pkg, sources.stream().map(info -> info.getFirst().name()).collect(Collectors.joining(",")));
-                sources.forEach(source -> {
-                    if (plainPaths.remove(source.getSecond())) {
-                        totalJars.getAndIncrement();
-                    }
-                    mergePkgs.computeIfAbsent(pkg, p -> new ArrayList<>()).add(source);
-                    jarOrder.add(source.getFirst());
-                });
-            }
-        });
-        LOGGER.debug("Found {} split packages across {} jars", mergePkgs.keySet().size(), totalJars.get());
-
-        // Name -> Jar merge info
-        Map<String, JarMergeInfo> jarMap = new HashMap<>();
-        mergePkgs.forEach((pkg, sources) -> {
-            // Sort sources in the order jars were discovered
-            sources.sort(Comparator.comparingInt(p -> jarOrder.indexOf(p.getFirst())));
-
-            Pair<SecureJar, FabricModPath> pair = sources.get(0);
-            SecureJar candidate = pair.getFirst();
-            String name = candidate.name();
-            JarMergeInfo owner = jarMap.computeIfAbsent(name, str -> new JarMergeInfo(candidate, pair.getSecond().metadata()));
-            analyzeJar(jarMap, owner, sources.subList(1, sources.size()), pkg);
-        });
-
-        // Find packages that are already loaded, along with packages of discovered mods
-        Set<String> existingPackages = new HashSet<>();
+        List<IModFile> existingMods = new ArrayList<>();
         for (IModFile modFile : existing) {
             if (!ignoredModFiles.contains(modFile)) {
-                existingPackages.addAll(modFile.getSecureJar().getPackages());
+                existingMods.add(modFile);
             }
         }
-        Collection<IModuleLayerManager.Layer> layers = Set.of(IModuleLayerManager.Layer.BOOT, IModuleLayerManager.Layer.SERVICE);
-        IModuleLayerManager manager = Launcher.INSTANCE.findLayerManager().orElseThrow();
-        for (IModuleLayerManager.Layer layer : layers) {
-            manager.getLayer(layer).orElseThrow().modules().stream()
-                .flatMap(module -> module.getPackages().stream())
-                .forEach(existingPackages::add);
-        }
-        // Remove existing classpath packages
-        for (String pkg : existingPackages) {
-            List<Pair<SecureJar, FabricModPath>> list = pkgSources.get(pkg);
-            if (list != null) {
-                for (Pair<SecureJar, FabricModPath> pair : list) {
-                    SecureJar jar = pair.getFirst();
-                    FabricModPath modPath = pair.getSecond();
-                    plainPaths.remove(modPath);
-                    JarMergeInfo info = jarMap.computeIfAbsent(jar.name(), str -> new JarMergeInfo(jar, modPath.metadata()));
-                    LOGGER.debug("Excluding existing package {} from jar {}", pkg, jar.name());
-                    info.excludedPackages().add(pkg);
+        List<Module> existingModules = EXISTING_LAYERS.stream()
+            .flatMap(layer -> Launcher.INSTANCE.findLayerManager().orElseThrow().getLayer(layer).orElseThrow().modules().stream())
+            .toList();
+
+        String fingerprint = computeFingerprint(paths, existingMods, existingModules);
+        JarMergeInfo[] plan = readPlan(fingerprint, paths.size());
+        if (plan == null) {
+            plan = computePlan(paths, existingMods, existingModules);
+            writePlan(fingerprint, plan);
+        }
+        else {
+            LOGGER.debug("Reusing split package merge plan for {} jars", paths.size());
+        }
+        return applyPlan(paths, plan);
+    }
+
+    /**
+     * Determines which packages to remove from / add to each jar in a single pass over all packages.
+     * Packages contained in more than one jar are owned by the first jar in discovery order, which receives
+     * the package's files from all other jars. Packages that are already provided by loaded modules are excluded
+     * from all jars.
+     */
+    private static JarMergeInfo[] computePlan(List<FabricModPath> paths, List<IModFile> existingMods, List<Module> existingModules) {
+        // Package name -> id, and the set of jar ids containing each package
+        Map<String, Integer> packageIds = new HashMap<>();
+        List<String> packages = new ArrayList<>();
+        List<BitSet> sources = new ArrayList<>();
+        for (int jar = 0; jar < paths.size(); jar++) {
+            for (String pkg : paths.get(jar).metadata().packages()) {
+                Integer id = packageIds.get(pkg);
+                if (id == null) {
+                    id = packages.size();
+                    packageIds.put(pkg, id);
+                    packages.add(pkg);
+                    sources.add(new BitSet(paths.size()));
                 }
+                sources.get(id).set(jar);
             }
         }
 
-        // Process gathered merge information
-        jarMap.values().forEach(info -> {
-            Set<Path> additionalPaths = info.additionalPaths();
-            Set<String> excludedPackages = info.excludedPackages();
-            BiPredicate<String, String> filter = !excludedPackages.isEmpty() ? new PackageTracker(Set.copyOf(excludedPackages)) : null;
-            Path[] jarPaths = Stream.concat(Stream.of(info.jar().getPrimaryPath()), additionalPaths.stream()).toArray(Path[]::new);
-            output.add(new FilteredModPath(jarPaths, filter, info.metadata));
-        });
+        // Find packages that are already loaded, only looking up packages of discovered mods
+        BitSet existingPackages = new BitSet(packages.size());
+        for (IModFile modFile : existingMods) {
+            markExisting(modFile.getSecureJar().getPackages(), packageIds, existingPackages);
+        }
+        for (Module module : existingModules) {
+            markExisting(module.getPackages(), packageIds, existingPackages);
+        }
+
+        JarMergeInfo[] plan = new JarMergeInfo[paths.size()];
+        int splitPackages = 0;
+        for (int id = 0; id < packages.size(); id++) {
+            String pkg = packages.get(id);
+            BitSet jars = sources.get(id);
+            if (existingPackages.get(id)) {
+                // Remove existing classpath packages
+                for (int jar = jars.nextSetBit(0); jar >= 0; jar = jars.nextSetBit(jar + 1)) {
+                    LOGGER.debug("Excluding existing package {} from jar {}", pkg, paths.get(jar).path().getFileName());
+                    getMergeInfo(plan, jar).excludedPackages().add(pkg);
+                }
+            }
+            if (jars.cardinality() > 1) {
+                splitPackages++;
+                int owner = jars.nextSetBit(0);
+                JarMergeInfo ownerInfo = getMergeInfo(plan, owner);
+                for (int jar = jars.nextSetBit(owner + 1); jar >= 0; jar = jars.nextSetBit(jar + 1)) {
+                    LOGGER.debug("Moving split package {} from jar {} to {}", pkg, paths.get(jar).path().getFileName(), paths.get(owner).path().getFileName());
+                    getMergeInfo(plan, jar).excludedPackages().add(pkg);
+                    ownerInfo.additionalPackages().add(new PackageSource(jar, pkg));
+                }
+            }
+        }
+        LOGGER.debug("Found {} split packages across {} jars", splitPackages, paths.size());
+        return plan;
+    }
 
-        // Add unprocessed paths to output
-        for (FabricModPath modPath : plainPaths) {
-            output.add(new FilteredModPath(new Path[] { modPath.path() }, null, modPath.metadata()));
+    private static void markExisting(Set<String> existing, Map<String, Integer> packageIds, BitSet existingPackages) {
+        for (String pkg : existing) {
+            Integer id = packageIds.get(pkg);
+            if (id != null) {
+                existingPackages.set(id);
+            }
         }
-        if (paths.size() != output.size()) {
-            LOGGER.error("Expected {} paths, got {}", paths.size(), plainPaths.size());
-            throw new IllegalStateException("Path size disprenancy detected!");
+    }
+
+    private static JarMergeInfo getMergeInfo(JarMergeInfo[] plan, int jar) {
+        JarMergeInfo info = plan[jar];
+        if (info == null) {
+            info = plan[jar] = new JarMergeInfo();
         }
+        return info;
+    }
 
+    private static List<FilteredModPath> applyPlan(List<FabricModPath> paths, JarMergeInfo[] plan) {
+        List<FilteredModPath> output = new ArrayList<>(paths.size());
+        for (int jar = 0; jar < paths.size(); jar++) {
+            FabricModPath modPath = paths.get(jar);
+            JarMergeInfo info = plan[jar];
+            if (info == null) {
+                output.add(new FilteredModPath(new Path[] { modPath.path() }, null, modPath.metadata()));
+                continue;
+            }
+            BiPredicate<String, String> filter = !info.excludedPackages().isEmpty() ? new PackageTracker(Set.copyOf(info.excludedPackages())) : null;
+            Path[] jarPaths = Stream.concat(
+                Stream.of(modPath.path()),
+                info.additionalPackages().stream()
+                    .map(source -> SecureJar.from(singlePackageFilter(source.pkg()), paths.get(source.jar()).path()).getRootPath())
+            ).toArray(Path[]::new);
+            output.add(new FilteredModPath(jarPaths, filter, modPath.metadata()));
+        }
         return output;
     }
 
     /**
-     * Determines which packages to remove from / add to a jar given a package owner and other package sources.
+     * Compute a fingerprint of all inputs to the merge plan. Jars are identified by their path, size and
+     * modification time, loaded modules by their name and version.
+     */
+    private static String computeFingerprint(List<FabricModPath> paths, List<IModFile> existingMods, List<Module> existingModules) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(EmbeddedDependencies.getJarCacheVersion(), StandardCharsets.UTF_8);
+        for (FabricModPath modPath : paths) {
+            putFile(hasher, modPath.path());
+        }
+        for (IModFile modFile : existingMods) {
+            putFile(hasher, modFile.getFilePath());
+        }
+        for (Module module : existingModules) {
+            hasher.putString(module.getDescriptor().toNameAndVersion(), StandardCharsets.UTF_8);
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    static void putFile(Hasher hasher, Path path) {
+        hasher.putString(path.toAbsolutePath().toString(), StandardCharsets.UTF_8);
+        hasher.putByte((byte) 0);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            hasher.putLong(attributes.size());
+            hasher.putLong(attributes.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            // Directories on the classpath or missing files, always considered changed
+            hasher.putLong(System.nanoTime());
+        }
+    }
+
+    /**
+     * Read a persisted merge plan.
+     * <p>
+     * File layout:
+     * <pre>
+     * int magic, int version, UTF fingerprint, int jar count
+     * per jar: boolean present; if present: int count, UTF excluded package...,
+     *   int count, (int source jar, UTF package) per additional package
+     * </pre>
      *
-     * @param swap   jar merge info map to write information to, must be mutable
-     * @param master the package owner jar
-     * @param others the remaining package sources
-     * @param pkg    the package to look filter out
+     * @return the plan, or {@code null} if there is no plan matching the fingerprint
      */
-    private static void analyzeJar(Map<String, JarMergeInfo> swap, JarMergeInfo master, List<Pair<SecureJar, FabricModPath>> others, String pkg) {
-        List<Path> additionalPaths = others.stream()
-            .flatMap(pair -> {
-                SecureJar sj = pair.getFirst();
-                JarTransformer.FabricModFileMetadata metadata = pair.getSecond().metadata();
-                SecureJar singlePackage = SecureJar.from(singlePackageFilter(pkg), sj.getPrimaryPath());
-                JarMergeInfo jarInfo = swap.computeIfAbsent(sj.name(), name -> new JarMergeInfo(sj, metadata));
-                jarInfo.excludedPackages().add(pkg);
-                return Stream.of(singlePackage.getRootPath());
-            })
-            .toList();
-        master.additionalPaths().addAll(additionalPaths);
+    @Nullable
+    private static JarMergeInfo[] readPlan(String fingerprint, int jarCount) {
+        if (Files.notExists(PLAN_PATH)) {
+            return null;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(PLAN_PATH)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION || !dis.readUTF().equals(fingerprint) || dis.readInt() != jarCount) {
+                return null;
+            }
+            JarMergeInfo[] plan = new JarMergeInfo[jarCount];
+            for (int jar = 0; jar < jarCount; jar++) {
+                if (!dis.readBoolean()) {
+                    continue;
+                }
+                JarMergeInfo info = plan[jar] = new JarMergeInfo();
+                int excludedCount = dis.readInt();
+                for (int i = 0; i < excludedCount; i++) {
+                    info.excludedPackages().add(dis.readUTF());
+                }
+                int additionalCount = dis.readInt();
+                for (int i = 0; i < additionalCount; i++) {
+                    int source = dis.readInt();
+                    if (source < 0 || source >= jarCount) {
+                        return null;
+                    }
+                    info.additionalPackages().add(new PackageSource(source, dis.readUTF()));
+                }
+            }
+            return plan;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read split package merge plan {}", PLAN_PATH, e);
+            return null;
+        }
+    }
+
+    private static void writePlan(String fingerprint, JarMergeInfo[] plan) {
+        try {
+            Files.createDirectories(PLAN_PATH.getParent());
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(PLAN_PATH)))) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(FORMAT_VERSION);
+                dos.writeUTF(fingerprint);
+                dos.writeInt(plan.length);
+                for (JarMergeInfo info : plan) {
+                    dos.writeBoolean(info != null);
+                    if (info != null) {
+                        dos.writeInt(info.excludedPackages().size());
+                        for (String pkg : info.excludedPackages()) {
+                            dos.writeUTF(pkg);
+                        }
+                        dos.writeInt(info.additionalPackages().size());
+                        for (PackageSource source : info.additionalPackages()) {
+                            dos.writeInt(source.jar());
+                            dos.writeUTF(source.pkg());
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to write split package merge plan {}", PLAN_PATH, e);
+        }
     }
 
     /**
@@ -174,16 +297,21 @@ public class SplitPackageMerger {
 
     /**
      * Keeps track of pending package merging modifications that should be done to a jar.
-     * @param jar the jar containing the package
-     * @param metadata fabric mod metadata of the jar's mod
-     * @param additionalPaths additional paths to include in the jar
+     * @param additionalPackages packages of other jars to include in the jar
      * @param excludedPackages packages to exlude from the jar
      */
-    private record JarMergeInfo(SecureJar jar, JarTransformer.FabricModFileMetadata metadata, Set<Path> additionalPaths, Set<String> excludedPackages) {
-        public JarMergeInfo(SecureJar jar, JarTransformer.FabricModFileMetadata metadata) {
-            this(jar, metadata, new HashSet<>(), new HashSet<>());
+    private record JarMergeInfo(List<PackageSource> additionalPackages, Set<String> excludedPackages) {
+        public JarMergeInfo() {
+            this(new ArrayList<>(), new HashSet<>());
         }
     }
 
+    /**
+     * A package provided by another jar.
+     * @param jar index of the jar containing the package
+     * @param pkg the package name
+     */
+    private record PackageSource(int jar, String pkg) {}
+
     public record FilteredModPath(Path[] paths, @Nullable BiPredicate<String, String> filter, JarTransformer.FabricModFileMetadata metadata) {}
 }
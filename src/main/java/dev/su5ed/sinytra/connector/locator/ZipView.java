@@ -0,0 +1,353 @@
+package dev.su5ed.sinytra.connector.locator;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A minimal read-only zip archive reader working on a region of a file or a byte array.
+ * Unlike {@link java.util.zip.ZipFile}, it is able to read archives nested inside other archives without extracting them.
+ * Nested archives that are stored uncompressed are read in place from their parent's file region,
+ * compressed ones are inflated into memory once.
+ */
+public final class ZipView implements Closeable {
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Source source;
+    private final Closeable owner;
+    private final Map<String, Entry> entries;
+
+    private ZipView(Source source, Closeable owner) throws IOException {
+        this.source = source;
+        this.owner = owner;
+        this.entries = readCentralDirectory(source);
+    }
+
+    public static ZipView open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new ZipView(new FileSource(channel, 0, channel.size()), channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * {@return names of all file entries in the archive, in central directory order}
+     */
+    public Collection<String> getEntryNames() {
+        return Collections.unmodifiableCollection(this.entries.keySet());
+    }
+
+    @Nullable
+    public Entry getEntry(String name) {
+        return this.entries.get(name);
+    }
+
+    public InputStream getInputStream(Entry entry) throws IOException {
+        InputStream raw = new SourceInputStream(this.source, getDataOffset(entry), entry.compressedSize());
+        return switch (entry.method()) {
+            case STORED -> raw;
+            case DEFLATED -> new EntryInflaterInputStream(raw);
+            default -> throw new ZipException("Unsupported compression method " + entry.method() + " of entry " + entry.name());
+        };
+    }
+
+    /**
+     * Open an archive nested inside this one. The returned view shares this view's underlying file,
+     * closing either of them closes both.
+     *
+     * @param entry the nested archive entry
+     */
+    public ZipView openNested(Entry entry) throws IOException {
+        if (entry.method() == STORED) {
+            return new ZipView(this.source.slice(getDataOffset(entry), entry.size()), this.owner);
+        }
+        if (entry.size() > Integer.MAX_VALUE) {
+            throw new ZipException("Nested archive " + entry.name() + " is too large to be read in memory");
+        }
+        byte[] data = new byte[(int) entry.size()];
+        try (InputStream is = getInputStream(entry)) {
+            int read = is.readNBytes(data, 0, data.length);
+            if (read != data.length) {
+                throw new EOFException("Unexpected end of nested archive " + entry.name());
+            }
+        }
+        return new ZipView(new ArraySource(data, 0, data.length), this.owner);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.owner.close();
+    }
+
+    private long getDataOffset(Entry entry) throws IOException {
+        byte[] header = new byte[LOCAL_HEADER_SIZE];
+        this.source.read(entry.localHeaderOffset(), header, 0, header.length);
+        if (readInt(header, 0) != LOCAL_HEADER_SIG) {
+            throw new ZipException("Invalid local header of entry " + entry.name());
+        }
+        return entry.localHeaderOffset() + LOCAL_HEADER_SIZE + readShort(header, 26) + readShort(header, 28);
+    }
+
+    private static Map<String, Entry> readCentralDirectory(Source source) throws IOException {
+        long size = source.size();
+        int tailLength = (int) Math.min(size, END_SIZE + MAX_COMMENT_LENGTH);
+        byte[] tail = new byte[tailLength];
+        source.read(size - tailLength, tail, 0, tailLength);
+        int endPos = -1;
+        for (int i = tailLength - END_SIZE; i >= 0; i--) {
+            if (readInt(tail, i) == END_SIG) {
+                endPos = i;
+                break;
+            }
+        }
+        if (endPos < 0) {
+            throw new ZipException("Zip end header not found");
+        }
+        long endOffset = size - tailLength + endPos;
+        long count = readShort(tail, endPos + 10);
+        long cdSize = readUnsignedInt(tail, endPos + 12);
+        long cdOffset = readUnsignedInt(tail, endPos + 16);
+        if ((count == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) && endOffset >= ZIP64_LOCATOR_SIZE) {
+            byte[] locator = new byte[ZIP64_LOCATOR_SIZE];
+            source.read(endOffset - ZIP64_LOCATOR_SIZE, locator, 0, locator.length);
+            if (readInt(locator, 0) == ZIP64_LOCATOR_SIG) {
+                byte[] end = new byte[ZIP64_END_SIZE];
+                source.read(readLong(locator, 8), end, 0, end.length);
+                if (readInt(end, 0) != ZIP64_END_SIG) {
+                    throw new ZipException("Invalid zip64 end header");
+                }
+                count = readLong(end, 32);
+                cdSize = readLong(end, 40);
+                cdOffset = readLong(end, 48);
+                endOffset -= ZIP64_LOCATOR_SIZE + ZIP64_END_SIZE;
+            }
+        }
+        if (cdSize > Integer.MAX_VALUE) {
+            throw new ZipException("Central directory is too large");
+        }
+        // Account for data prepended to the archive
+        long base = endOffset - cdSize - cdOffset;
+        if (base < 0) {
+            throw new ZipException("Invalid central directory offset");
+        }
+        byte[] cd = new byte[(int) cdSize];
+        source.read(base + cdOffset, cd, 0, cd.length);
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        int pos = 0;
+        for (long i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > cd.length || readInt(cd, pos) != CENTRAL_HEADER_SIG) {
+                throw new ZipException("Invalid central directory header");
+            }
+            int method = readShort(cd, pos + 10);
+            long crc = readUnsignedInt(cd, pos + 16);
+            long compressedSize = readUnsignedInt(cd, pos + 20);
+            long uncompressedSize = readUnsignedInt(cd, pos + 24);
+            int nameLength = readShort(cd, pos + 28);
+            int extraLength = readShort(cd, pos + 30);
+            int commentLength = readShort(cd, pos + 32);
+            long localHeaderOffset = readUnsignedInt(cd, pos + 42);
+            String name = new String(cd, pos + CENTRAL_HEADER_SIZE, nameLength, StandardCharsets.UTF_8);
+            // Read 64-bit values from the zip64 extra field, present only for fields that overflowed
+            int extraPos = pos + CENTRAL_HEADER_SIZE + nameLength;
+            int extraEnd = extraPos + extraLength;
+            while (extraPos + 4 <= extraEnd) {
+                int id = readShort(cd, extraPos);
+                int length = readShort(cd, extraPos + 2);
+                if (id == ZIP64_EXTRA_ID) {
+                    int fieldPos = extraPos + 4;
+                    if (uncompressedSize == 0xFFFFFFFFL) {
+                        uncompressedSize = readLong(cd, fieldPos);
+                        fieldPos += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = readLong(cd, fieldPos);
+                        fieldPos += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL) {
+                        localHeaderOffset = readLong(cd, fieldPos);
+                    }
+                    break;
+                }
+                extraPos += 4 + length;
+            }
+            if (!name.endsWith("/")) {
+                entries.putIfAbsent(name, new Entry(name, method, crc, compressedSize, uncompressedSize, base + localHeaderOffset));
+            }
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static int readShort(byte[] buf, int pos) {
+        return buf[pos] & 0xFF | (buf[pos + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] buf, int pos) {
+        return readShort(buf, pos) | readShort(buf, pos + 2) << 16;
+    }
+
+    private static long readUnsignedInt(byte[] buf, int pos) {
+        return readInt(buf, pos) & 0xFFFFFFFFL;
+    }
+
+    private static long readLong(byte[] buf, int pos) {
+        return readUnsignedInt(buf, pos) | readUnsignedInt(buf, pos + 4) << 32;
+    }
+
+    /**
+     * A file entry of an archive.
+     *
+     * @param name               the entry name
+     * @param method             the compression method
+     * @param crc                CRC-32 of the uncompressed entry data
+     * @param compressedSize     size of the stored entry data
+     * @param size               size of the uncompressed entry data
+     * @param localHeaderOffset  offset of the entry's local header in the archive's source
+     */
+    public record Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {}
+
+    private interface Source {
+        long size();
+
+        void read(long pos, byte[] buf, int off, int len) throws IOException;
+
+        Source slice(long offset, long length) throws IOException;
+    }
+
+    private record FileSource(FileChannel channel, long base, long size) implements Source {
+        @Override
+        public void read(long pos, byte[] buf, int off, int len) throws IOException {
+            if (pos < 0 || pos + len > this.size) {
+                throw new EOFException("Read outside of archive bounds");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(buf, off, len);
+            while (buffer.hasRemaining()) {
+                if (this.channel.read(buffer, this.base + pos + buffer.position() - off) < 0) {
+                    throw new EOFException();
+                }
+            }
+        }
+
+        @Override
+        public Source slice(long offset, long length) throws IOException {
+            if (offset < 0 || offset + length > this.size) {
+                throw new ZipException("Nested archive outside of parent bounds");
+            }
+            return new FileSource(this.channel, this.base + offset, length);
+        }
+    }
+
+    private record ArraySource(byte[] data, int base, long size) implements Source {
+        @Override
+        public void read(long pos, byte[] buf, int off, int len) throws IOException {
+            if (pos < 0 || pos + len > this.size) {
+                throw new EOFException("Read outside of archive bounds");
+            }
+            System.arraycopy(this.data, (int) (this.base + pos), buf, off, len);
+        }
+
+        @Override
+        public Source slice(long offset, long length) throws IOException {
+            if (offset < 0 || offset + length > this.size) {
+                throw new ZipException("Nested archive outside of parent bounds");
+            }
+            return new ArraySource(this.data, (int) (this.base + offset), length);
+        }
+    }
+
+    private static class SourceInputStream extends InputStream {
+        private final Source source;
+        private final long end;
+        private long pos;
+
+        public SourceInputStream(Source source, long start, long length) {
+            this.source = source;
+            this.pos = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] buf = new byte[1];
+            return read(buf, 0, 1) == -1 ? -1 : buf[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.pos >= this.end) {
+                return -1;
+            }
+            int count = (int) Math.min(len, this.end - this.pos);
+            this.source.read(this.pos, b, off, count);
+            this.pos += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, this.end - this.pos);
+        }
+    }
+
+    private static class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean eof;
+
+        public EntryInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true), BUFFER_SIZE);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (this.eof) {
+                throw new EOFException("Unexpected end of zip entry");
+            }
+            this.len = this.in.read(this.buf, 0, this.buf.length);
+            // The inflater may need an extra dummy byte when reading raw deflate data
+            if (this.len == -1) {
+                this.buf[0] = 0;
+                this.len = 1;
+                this.eof = true;
+            }
+            this.inf.setInput(this.buf, 0, this.len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            this.inf.end();
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package dev.su5ed.sinytra.connector.service;
 
+import com.google.common.base.Suppliers;
 import cpw.mods.modlauncher.api.NamedPath;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 import dev.su5ed.sinytra.connector.loader.ConnectorEarlyLoader;
+import dev.su5ed.sinytra.connector.transformer.jar.WideningManifest;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
@@ -10,11 +12,19 @@ import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
 
 import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class ConnectorPreLaunchPlugin implements ILaunchPluginService {
     public static final String NAME = "connector_pre_launch";
     private static final EnumSet<Phase> YAY = EnumSet.of(Phase.AFTER);
     private static final EnumSet<Phase> NAY = EnumSet.noneOf(Phase.class);
+    // Widen members of all minecraft classes instead of only those listed in the widening manifest
+    private static final boolean WIDEN_ALL = Boolean.getBoolean("connector.widenAll");
+
+    // Read once the first minecraft class is loaded, which happens after jars have been transformed
+    private final Supplier<Optional<Set<String>>> wideningManifest = Suppliers.memoize(() -> WIDEN_ALL ? Optional.empty() : Optional.ofNullable(WideningManifest.load()));
 
     @Override
     public String name() {
@@ -35,7 +45,8 @@ public class ConnectorPreLaunchPlugin implements ILaunchPluginService {
 
     @Override
     public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
-        return classType.getInternalName().startsWith("net/minecraft/") ? YAY : NAY;
+        String name = classType.getInternalName();
+        return name.startsWith("net/minecraft/") && this.wideningManifest.get().map(classes -> classes.contains(name)).orElse(true) ? YAY : NAY;
     }
 
     @Override
@@ -43,6 +54,7 @@ public class ConnectorPreLaunchPlugin implements ILaunchPluginService {
         // Widen access of all package-private and protected class members to be public
         // This is required due to package differences between yarn/intermediary/mojmap
         // Changing mapping might move accessors of a field into a different package, leading to a crash
+        // Only classes referenced by fabric mods are handled, as listed in the widening manifest
         boolean rewrite = false;
         for (FieldNode field : classNode.fields) {
             if ((field.access & 0x7) != Opcodes.ACC_PRIVATE) {
@@ -5,6 +5,8 @@ import dev.su5ed.sinytra.adapter.patch.api.Patch;
 import dev.su5ed.sinytra.adapter.patch.api.PatchContext;
 import dev.su5ed.sinytra.adapter.patch.api.PatchEnvironment;
 import dev.su5ed.sinytra.connector.transformer.patch.ClassNodeTransformer;
+import dev.su5ed.sinytra.connector.transformer.patch.ConstantPoolScanner;
+import dev.su5ed.sinytra.connector.transformer.patch.PatchTargetIndex;
 import dev.su5ed.sinytra.connector.transformer.patch.RedirectAccessorToMethod;
 import net.minecraftforge.coremod.api.ASMAPI;
 import net.minecraftforge.srgutils.IMappingFile;
@@ -20,10 +22,10 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 import static cpw.mods.modlauncher.api.LamdbaExceptionUtils.rethrowConsumer;
@@ -44,7 +46,8 @@ public class AccessorRedirectTransformer implements ClassNodeTransformer.ClassPr
         .toList();
 
     private final IMappingFile mappings;
-    private final Map<String, Map<String, String>> methodRenames = new HashMap<>();
+    private final Map<String, Map<String, String>> methodRenames = new ConcurrentHashMap<>();
+    private final Set<String> mixinTargets = ConcurrentHashMap.newKeySet();
 
     public AccessorRedirectTransformer(IMappingFile mappings) {
         this.mappings = mappings;
@@ -75,6 +78,18 @@ public class AccessorRedirectTransformer implements ClassNodeTransformer.ClassPr
         }
     }
 
+    /**
+     * {@return internal names of classes targeted by mixins found during analysis}
+     */
+    public Set<String> getMixinTargets() {
+        return this.mixinTargets;
+    }
+
+    @Override
+    public boolean mayProcess(ConstantPoolScanner pool) {
+        return !this.methodRenames.isEmpty() && pool.anyMethodRef((owner, name, desc) -> this.methodRenames.containsKey(owner));
+    }
+
     @Override
     public Patch.Result process(ClassNode node) {
         boolean applied = false;
@@ -101,13 +116,14 @@ public class AccessorRedirectTransformer implements ClassNodeTransformer.ClassPr
         ClassNode node = new ClassNode();
         reader.accept(node, ClassReader.SKIP_CODE);
 
+        this.mixinTargets.addAll(PatchTargetIndex.getMixinTargets(node));
         for (Patch patch : accessorAnalysisPatches) {
             patch.apply(node, environment);
         }
     }
 
     private Patch.Result analyzeAccessor(ClassNode classNode, MethodNode methodNode, MethodContext methodContext, PatchContext context) {
-        this.methodRenames.computeIfAbsent(classNode.name, s -> new HashMap<>())
+        this.methodRenames.computeIfAbsent(classNode.name, s -> new ConcurrentHashMap<>())
             .put(methodNode.name + methodNode.desc, PREFIX + methodNode.name);
         return Patch.Result.PASS;
     }
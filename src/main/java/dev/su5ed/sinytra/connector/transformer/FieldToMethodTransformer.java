@@ -4,6 +4,7 @@ import com.google.common.collect.ImmutableMap;
 import com.mojang.logging.LogUtils;
 import dev.su5ed.sinytra.adapter.patch.api.Patch;
 import dev.su5ed.sinytra.connector.transformer.patch.ClassNodeTransformer;
+import dev.su5ed.sinytra.connector.transformer.patch.ConstantPoolScanner;
 import net.fabricmc.accesswidener.AccessWidenerReader;
 import net.fabricmc.accesswidener.AccessWidenerVisitor;
 import net.fabricmc.accesswidener.AccessWidenerWriter;
@@ -11,6 +12,7 @@ import net.fabricmc.accesswidener.ForwardingVisitor;
 import net.minecraftforge.coremod.api.ASMAPI;
 import net.minecraftforge.fart.api.Transformer;
 import net.minecraftforge.srgutils.IMappingFile;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
@@ -20,9 +22,11 @@ import org.objectweb.asm.tree.MethodNode;
 import org.slf4j.Logger;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
 
 public class FieldToMethodTransformer implements ClassNodeTransformer.ClassProcessor {
     public static final Map<String, Map<String, String>> REPLACEMENTS = ImmutableMap.<String, Map<String, String>>builder()
@@ -70,18 +74,42 @@ public class FieldToMethodTransformer implements ClassNodeTransformer.ClassProce
         ))
         .buildOrThrow();
 
+    // The same mapping file is used for all jars, so we only map replacements once
+    private static final Map<IMappingFile, Map<String, Replacement>> MAPPED_REPLACEMENTS_CACHE = Collections.synchronizedMap(new WeakHashMap<>());
     private static final Logger LOGGER = LogUtils.getLogger();
     private final String accessWidenerResource;
-    private final Map<String, String> mappedReplacements;
+    // Keyed by field name, which is unique in intermediary. The owner is not part of the key, as fields are commonly accessed via subclasses.
+    private final Map<String, Replacement> mappedReplacements;
+
+    private record Replacement(String getter, @Nullable String desc) {
+        boolean matches(FieldInsnNode insn) {
+            return this.desc == null || this.desc.equals(insn.desc);
+        }
+    }
 
     public FieldToMethodTransformer(String accessWidenerResource, IMappingFile mappings) {
         this.accessWidenerResource = accessWidenerResource;
-        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        this.mappedReplacements = MAPPED_REPLACEMENTS_CACHE.computeIfAbsent(mappings, FieldToMethodTransformer::mapReplacements);
+    }
+
+    private static Map<String, Replacement> mapReplacements(IMappingFile mappings) {
+        ImmutableMap.Builder<String, Replacement> builder = ImmutableMap.builder();
         REPLACEMENTS.forEach((cls, replacements) -> {
             IMappingFile.IClass classMap = Objects.requireNonNull(mappings.getClass(cls.replace('.', '/')));
-            replacements.forEach((field, getter) -> builder.put(classMap.remapField(field), ASMAPI.mapMethod(getter)));
+            replacements.forEach((field, getter) -> {
+                IMappingFile.IField fieldMap = classMap.getField(field);
+                // Descriptors are optional in mapping files, in which case we only match by name
+                String desc = fieldMap != null ? fieldMap.getMappedDescriptor() : null;
+                builder.put(classMap.remapField(field), new Replacement(ASMAPI.mapMethod(getter), desc));
+            });
         });
-        this.mappedReplacements = builder.build();
+        return builder.build();
+    }
+
+    @Override
+    public boolean mayProcess(ConstantPoolScanner pool) {
+        // Look for references to replaced fields in the constant pool
+        return pool.anyFieldRef((owner, name, desc) -> this.mappedReplacements.containsKey(name));
     }
 
     @Override
@@ -107,16 +135,14 @@ public class FieldToMethodTransformer implements ClassNodeTransformer.ClassProce
             for (ListIterator<AbstractInsnNode> iterator = method.instructions.iterator(); iterator.hasNext(); ) {
                 AbstractInsnNode insn = iterator.next();
                 if (insn instanceof FieldInsnNode fieldInsn && (fieldInsn.getOpcode() == Opcodes.GETFIELD || fieldInsn.getOpcode() == Opcodes.GETSTATIC)) {
-                    for (Map.Entry<String, String> entry : this.mappedReplacements.entrySet()) {
-                        String source = entry.getKey();
-                        if (source.equals(fieldInsn.name)) {
-                            LOGGER.trace("Replacing field getter {} to method {} in {}#{}", source, entry.getValue(), cls.name, method.name);
-                            iterator.remove();
-                            String getterDesc = "()" + fieldInsn.desc;
-                            MethodInsnNode getterCall = new MethodInsnNode(Opcodes.INVOKEVIRTUAL, fieldInsn.owner, entry.getValue(), getterDesc, false);
-                            iterator.add(getterCall);
-                            replaced = true;
-                        }
+                    Replacement replacement = this.mappedReplacements.get(fieldInsn.name);
+                    if (replacement != null && replacement.matches(fieldInsn)) {
+                        LOGGER.trace("Replacing field getter {} to method {} in {}#{}", fieldInsn.name, replacement.getter(), cls.name, method.name);
+                        iterator.remove();
+                        String getterDesc = "()" + fieldInsn.desc;
+                        MethodInsnNode getterCall = new MethodInsnNode(Opcodes.INVOKEVIRTUAL, fieldInsn.owner, replacement.getter(), getterDesc, false);
+                        iterator.add(getterCall);
+                        replaced = true;
                     }
                 }
             }
@@ -1,5 +1,6 @@
 package dev.su5ed.sinytra.connector.transformer;
 
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.gson.GsonBuilder;
@@ -24,7 +25,9 @@ import dev.su5ed.sinytra.adapter.patch.transformer.dynamic.DynamicInjectorOrdina
 import dev.su5ed.sinytra.adapter.patch.transformer.dynamic.DynamicLVTPatch;
 import dev.su5ed.sinytra.adapter.patch.transformer.dynamic.DynamicModifyVarAtReturnPatch;
 import dev.su5ed.sinytra.connector.ConnectorUtil;
+import dev.su5ed.sinytra.connector.transformer.patch.ConstantPoolScanner;
 import dev.su5ed.sinytra.connector.transformer.patch.EnvironmentStripperTransformer;
+import dev.su5ed.sinytra.connector.transformer.patch.PatchTargetIndex;
 import net.minecraftforge.fart.api.Transformer;
 import net.minecraftforge.forgespi.locating.IModFile;
 import org.objectweb.asm.ClassReader;
@@ -46,6 +49,7 @@ import org.slf4j.Logger;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -56,6 +60,9 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -493,24 +500,38 @@ public class MixinPatchTransformer implements Transformer {
     private static final Patch CLASS_PATCH = Patch.builder()
         .transform(CLASS_TRANSFORMS)
         .build();
+    private static final String SRG_FIELD_PREFIX = "f_";
     private static final Logger LOGGER = LogUtils.getLogger();
     private static boolean completedSetup = false;
 
     private final Set<String> mixinPackages;
-    private final PatchEnvironment environment;
-    private final List<? extends Patch> patches;
+    // Created once the first class needs patching, as it initializes the bytecode fixer-upper
+    private final Supplier<PatchEnvironment> environment;
+    private volatile boolean environmentCreated;
+    // Serializes patching of mixin classes, which other classes of the jar are processed concurrently with
+    private final Object generatorLock = new Object();
+    private final Supplier<PatchTargetIndex> patches;
+    // Statistics of patches checked against mixins of this jar
+    private final AtomicInteger mixinCount = new AtomicInteger();
+    private final AtomicLong evaluatedPatches = new AtomicLong();
+    private final AtomicLong appliedPatches = new AtomicLong();
 
-    public MixinPatchTransformer(LVTOffsets lvtOffsets, Set<String> mixinPackages, PatchEnvironment environment, List<? extends Patch> adapterPatches) {
+    public MixinPatchTransformer(Supplier<LVTOffsets> lvtOffsets, Set<String> mixinPackages, Supplier<PatchEnvironment> environment, Supplier<? extends List<? extends Patch>> adapterPatches) {
         this.mixinPackages = mixinPackages;
-        this.environment = environment;
-        this.patches = ImmutableList.<Patch>builder()
+        this.environment = Suppliers.memoize(() -> {
+            PatchEnvironment env = environment.get();
+            this.environmentCreated = true;
+            return env;
+        });
+        // Patches are only needed for jars that contain mixins
+        this.patches = Suppliers.memoize(() -> new PatchTargetIndex(ImmutableList.<Patch>builder()
             .addAll(PRIORITY_PATCHES)
-            .addAll(adapterPatches)
+            .addAll(adapterPatches.get())
             .addAll(PATCHES)
             .add(
                 Patch.builder()
                     .transform(new DynamicInjectorOrdinalPatch())
-                    .transform(new DynamicLVTPatch(() -> lvtOffsets))
+                    .transform(new DynamicLVTPatch(lvtOffsets::get))
                     .transform(new DynamicAnonymousShadowFieldTypePatch())
                     .transform(new DynamicModifyVarAtReturnPatch())
                     .transform(new DynamicInheritedInjectionPointPatch())
@@ -519,11 +540,16 @@ public class MixinPatchTransformer implements Transformer {
                     .transform(new FieldTypePatchTransformer())
                     .build()
             )
-            .build();
+            .build()));
     }
 
     public void finalize(Path zipRoot, Collection<String> configs, Map<String, SrgRemappingReferenceMapper.SimpleRefmap> refmapFiles, Set<String> dirtyRefmaps) throws IOException {
-        Map<String, MixinClassGenerator.GeneratedClass> generatedMixinClasses = this.environment.classGenerator().getGeneratedMixinClasses();
+        int mixins = this.mixinCount.get();
+        if (mixins > 0) {
+            LOGGER.debug("Evaluated {} of {} possible patches against {} mixins, {} applied",
+                this.evaluatedPatches.get(), (long) mixins * this.patches.get().size(), mixins, this.appliedPatches.get());
+        }
+        Map<String, MixinClassGenerator.GeneratedClass> generatedMixinClasses = this.environmentCreated ? this.environment.get().classGenerator().getGeneratedMixinClasses() : Map.of();
         if (!generatedMixinClasses.isEmpty()) {
             for (String config : configs) {
                 Path entry = zipRoot.resolve(config);
@@ -550,8 +576,9 @@ public class MixinPatchTransformer implements Transformer {
                                         SrgRemappingReferenceMapper.SimpleRefmap refmap = refmapFiles.get(refmapName);
                                         Path path = zipRoot.resolve(refmapName);
                                         if (Files.exists(path)) {
-                                            String refmapString = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create().toJson(refmap);
-                                            Files.writeString(path, refmapString, StandardCharsets.UTF_8);
+                                            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                                                refmap.write(writer);
+                                            }
                                         }
                                     }
                                 }
@@ -642,27 +669,31 @@ public class MixinPatchTransformer implements Transformer {
         completedSetup = true;
     }
 
+    /**
+     * Cheaply check whether a class may be modified by this transformer before its tree is built.
+     * Mixins are always processed, while other classes are only subject to class transforms,
+     * which strip environment annotations and rewrite usages of retyped Minecraft fields.
+     *
+     * @param pool the scanned constant pool of the class
+     * @return {@code false} if the class can be skipped
+     */
+    public boolean mayProcess(ConstantPoolScanner pool) {
+        return isInMixinPackage(pool.getReader().getClassName())
+            || pool.containsUtf8(EnvironmentStripperTransformer.ENVIRONMENT_ANNOTATION)
+            // Classes referencing Minecraft fields contain either intermediary or, once remapped, SRG names
+            || pool.anyUtf8(str -> OptimizedRenamingTransformer.hasMappingMarker(str) || str.startsWith(SRG_FIELD_PREFIX));
+    }
+
     @Override
     public ClassEntry process(ClassEntry entry) {
-        String className = entry.getClassName();
-        Patch.Result patchResult = Patch.Result.PASS;
-
         ClassReader reader = new ClassReader(entry.getData());
+        if (!mayProcess(new ConstantPoolScanner(reader))) {
+            return entry;
+        }
         ClassNode node = new ClassNode();
         reader.accept(node, 0);
 
-        if (isInMixinPackage(className)) {
-            patchResult = patchResult.or(CLASS_PATCH.apply(node, this.environment));
-
-            for (Patch patch : this.patches) {
-                patchResult = patchResult.or(patch.apply(node, this.environment));
-            }
-        } else {
-            for (ClassTransform transform : CLASS_TRANSFORMS) {
-                patchResult = patchResult.or(transform.apply(node, null, PatchContext.create(node, List.of(), this.environment)));
-            }
-        }
-
+        Patch.Result patchResult = processNode(node);
         // TODO if a mixin method is extracted, roll back the status from compute frames to apply,
         // Alternatively, change the order of patches so that extractmixin comes first
         if (patchResult != Patch.Result.PASS) {
@@ -673,14 +704,47 @@ public class MixinPatchTransformer implements Transformer {
         return entry;
     }
 
+    public Patch.Result processNode(ClassNode node) {
+        Patch.Result patchResult = Patch.Result.PASS;
+        if (isInMixinPackage(node.name)) {
+            PatchEnvironment environment = this.environment.get();
+            List<Patch> patches = this.patches.get().getPatches(node);
+            int applied = 0;
+            // Patches may generate mixin classes, and the class generator of the environment makes no thread-safety guarantees
+            synchronized (this.generatorLock) {
+                patchResult = patchResult.or(CLASS_PATCH.apply(node, environment));
+                for (Patch patch : patches) {
+                    Patch.Result result = patch.apply(node, environment);
+                    if (result != Patch.Result.PASS) {
+                        applied++;
+                    }
+                    patchResult = patchResult.or(result);
+                }
+            }
+            this.mixinCount.incrementAndGet();
+            this.evaluatedPatches.addAndGet(patches.size());
+            this.appliedPatches.addAndGet(applied);
+        } else {
+            PatchContext context = PatchContext.create(node, List.of(), this.environment.get());
+            for (ClassTransform transform : CLASS_TRANSFORMS) {
+                patchResult = patchResult.or(transform.apply(node, null, context));
+            }
+        }
+        return patchResult;
+    }
+
     @Override
     public Collection<? extends Entry> getExtras() {
+        if (!this.environmentCreated) {
+            return List.of();
+        }
         List<Entry> entries = new ArrayList<>();
         Patch patch = Patch.builder()
             .transform(new DynamicInheritedInjectionPointPatch())
             .build();
-        this.environment.classGenerator().getGeneratedMixinClasses().forEach((name, cls) -> {
-            patch.apply(cls.node(), this.environment);
+        PatchEnvironment environment = this.environment.get();
+        environment.classGenerator().getGeneratedMixinClasses().forEach((name, cls) -> {
+            patch.apply(cls.node(), environment);
 
             ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
             cls.node().accept(writer);
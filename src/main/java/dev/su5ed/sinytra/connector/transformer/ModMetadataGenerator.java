@@ -24,7 +24,7 @@ public class ModMetadataGenerator implements Transformer {
     private static final String MOD_ANNOTATION_DESC = "Lnet/minecraftforge/fml/common/Mod;";
 
     private final String modid;
-    private boolean seen;
+    private volatile boolean seen;
 
     public ModMetadataGenerator(String modid) {
         this.modid = modid;
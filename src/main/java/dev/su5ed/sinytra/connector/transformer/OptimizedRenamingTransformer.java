@@ -2,10 +2,11 @@ package dev.su5ed.sinytra.connector.transformer;
 
 import dev.su5ed.sinytra.adapter.patch.selector.AnnotationHandle;
 import dev.su5ed.sinytra.adapter.patch.util.MethodQualifier;
+import dev.su5ed.sinytra.connector.transformer.jar.ClassHierarchy;
+import dev.su5ed.sinytra.connector.transformer.jar.ClassInfoCache;
 import dev.su5ed.sinytra.connector.transformer.jar.IntermediateMapping;
+import dev.su5ed.sinytra.connector.transformer.patch.ConstantPoolScanner;
 import net.minecraftforge.fart.api.ClassProvider;
-import net.minecraftforge.fart.api.Transformer;
-import net.minecraftforge.fart.internal.ClassProviderImpl;
 import net.minecraftforge.fart.internal.EnhancedClassRemapper;
 import net.minecraftforge.fart.internal.EnhancedRemapper;
 import net.minecraftforge.fart.internal.RenamingTransformer;
@@ -14,7 +15,6 @@ import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
@@ -32,18 +32,18 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 public final class OptimizedRenamingTransformer extends RenamingTransformer {
-    private static final String CLASS_DESC_PATTERN = "^L[a-zA-Z0-9/$_]+;$";
-    private static final String FQN_CLASS_NAME_PATTERN = "^([a-zA-Z0-9$_]+\\.)*[a-zA-Z0-9$_]+$";
+    // Substrings preceding an underscore in intermediary names. Values containing none of these can never be remapped.
+    private static final String[] MAPPING_MARKERS = { "class", "method", "field", "comp" };
 
-    public static Transformer create(ClassProvider classProvider, Consumer<String> log, IMappingFile mappingFile, IntermediateMapping flatMappings) {
+    private final PostProcessRemapper postProcessRemapper;
+
+    public static OptimizedRenamingTransformer create(ClassProvider classProvider, Consumer<String> log, IMappingFile mappingFile, IntermediateMapping flatMappings) {
         IntermediaryClassProvider reverseProvider = new IntermediaryClassProvider(classProvider, mappingFile, mappingFile.reverse(), log);
         EnhancedRemapper enhancedRemapper = new MixinAwareEnhancedRemapper(reverseProvider, mappingFile, flatMappings, log);
         return new OptimizedRenamingTransformer(enhancedRemapper, false);
@@ -51,6 +51,32 @@ public final class OptimizedRenamingTransformer extends RenamingTransformer {
 
     public OptimizedRenamingTransformer(EnhancedRemapper remapper, boolean collectAbstractParams) {
         super(remapper, collectAbstractParams);
+        this.postProcessRemapper = new PostProcessRemapper(((MixinAwareEnhancedRemapper) remapper).flatMappings, remapper);
+    }
+
+    /**
+     * Cheaply check whether remapping may change a class before its tree is built.
+     * Classes that don't contain intermediary names anywhere in their constant pool are left unchanged by the remapper.
+     *
+     * @param pool the scanned constant pool of the class
+     * @return {@code false} if remapping the class can be skipped
+     */
+    public boolean mayRemap(ConstantPoolScanner pool) {
+        return pool.anyUtf8(OptimizedRenamingTransformer::hasMappingMarker);
+    }
+
+    /**
+     * Remap a class tree into a new node without going through its serialized form,
+     * applying the same post-processing as {@link #process(ClassEntry)}.
+     *
+     * @param node the class to remap
+     * @return a new node containing the remapped class
+     */
+    public ClassNode remapClass(ClassNode node) {
+        ClassNode remapped = new ClassNode();
+        node.accept(new EnhancedClassRemapper(remapped, this.remapper, this));
+        postProcess(remapped);
+        return remapped;
     }
 
     @Override
@@ -60,30 +86,29 @@ public final class OptimizedRenamingTransformer extends RenamingTransformer {
         // Remap raw values (usually found in reflection calls) and unmapped mixin annotations
         // This is done in a "post-processing" phase rather than inside the main remapper's mapValue method
         // so that we're able to determine the "remap" mixin annotation value ahead of time, and only remap it when necessary
-        PostProcessRemapper postProcessRemapper = new PostProcessRemapper(((MixinAwareEnhancedRemapper) this.remapper).flatMappings, this.remapper);
         for (MethodNode method : node.methods) {
             if (method.visibleAnnotations != null) {
                 // If remap has been set to false during compilation, we must manually map the annotation values ourselves instead of relying on the provided refmap
                 if (method.visibleAnnotations.stream().anyMatch(ann -> new AnnotationHandle(ann).<Boolean>getValue("remap").map(h -> !h.get()).orElse(false))) {
                     for (AnnotationNode annotation : method.visibleAnnotations) {
-                        postProcessRemapper.mapAnnotationValues(annotation.values);
+                        this.postProcessRemapper.mapAnnotationValues(annotation.values);
                     }
                 }
             }
             for (AbstractInsnNode insn : method.instructions) {
                 if (insn instanceof LdcInsnNode ldc) {
-                    ldc.cst = postProcessRemapper.mapValue(ldc.cst);
+                    ldc.cst = this.postProcessRemapper.mapValue(ldc.cst);
                 }
                 if (insn instanceof InvokeDynamicInsnNode indy) {
                     for (int i = 0; i < indy.bsmArgs.length; i++) {
-                        indy.bsmArgs[i] = postProcessRemapper.mapValue(indy.bsmArgs[i]);
-                        indy.bsm = (Handle) postProcessRemapper.mapValue(indy.bsm);
+                        indy.bsmArgs[i] = this.postProcessRemapper.mapValue(indy.bsmArgs[i]);
+                        indy.bsm = (Handle) this.postProcessRemapper.mapValue(indy.bsm);
                     }
                 }
             }
         }
         for (FieldNode field : node.fields) {
-            field.value = postProcessRemapper.mapValue(field.value);
+            field.value = this.postProcessRemapper.mapValue(field.value);
         }
     }
 
@@ -110,21 +135,22 @@ public final class OptimizedRenamingTransformer extends RenamingTransformer {
         }
 
         public Object mapValue(Object value) {
-            if (value instanceof String str) {
-                if (str.matches(CLASS_DESC_PATTERN)) {
+            if (value instanceof String str && hasMappingMarker(str)) {
+                if (isClassDescriptor(str)) {
                     String mapped = flatMappings.map(str.substring(1, str.length() - 1));
                     if (mapped != null) {
                         return 'L' + mapped + ';';
                     }
                 }
-                else if (str.matches(FQN_CLASS_NAME_PATTERN)) {
+                else if (isQualifiedClassName(str)) {
                     String mapped = flatMappings.map(str.replace('.', '/'));
                     if (mapped != null) {
                         return mapped.replace('/', '.');
                     }
                 }
 
-                MethodQualifier qualifier = MethodQualifier.create(str).orElse(null);
+                // Qualifiers without a descriptor are ignored, so we only parse those that contain one
+                MethodQualifier qualifier = str.indexOf('(') != -1 ? MethodQualifier.create(str).orElse(null) : null;
                 if (qualifier != null && qualifier.desc() != null) {
                     String owner = qualifier.owner() != null ? this.remapper.mapDesc(qualifier.owner()) : "";
                     String name = qualifier.name() != null ? this.flatMappings.mapMethodOrDefault(qualifier.name(), qualifier.desc()) : "";
@@ -141,13 +167,58 @@ public final class OptimizedRenamingTransformer extends RenamingTransformer {
         }
     }
 
+    public static boolean hasMappingMarker(String str) {
+        for (int i = str.indexOf('_'); i != -1; i = str.indexOf('_', i + 1)) {
+            for (String marker : MAPPING_MARKERS) {
+                if (i >= marker.length() && str.startsWith(marker, i - marker.length())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Equivalent to matching ^L[a-zA-Z0-9/$_]+;$
+    static boolean isClassDescriptor(String str) {
+        int length = str.length();
+        if (length < 3 || str.charAt(0) != 'L' || str.charAt(length - 1) != ';') {
+            return false;
+        }
+        for (int i = 1; i < length - 1; i++) {
+            char c = str.charAt(i);
+            if (c != '/' && !isNameChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Equivalent to matching ^([a-zA-Z0-9$_]+\.)*[a-zA-Z0-9$_]+$
+    static boolean isQualifiedClassName(String str) {
+        int length = str.length();
+        if (length == 0 || str.charAt(0) == '.' || str.charAt(length - 1) == '.') {
+            return false;
+        }
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c == '.' ? previous == '.' : !isNameChar(c)) {
+                return false;
+            }
+            previous = c;
+        }
+        return true;
+    }
+
+    private static boolean isNameChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '$' || c == '_';
+    }
+
     private static final class IntermediaryClassProvider implements ClassProvider {
         private final ClassProvider upstream;
         private final IMappingFile forwardMapping;
         private final EnhancedRemapper remapper;
 
-        private final Map<String, Optional<IClassInfo>> classCache = new ConcurrentHashMap<>();
-
         private IntermediaryClassProvider(ClassProvider upstream, IMappingFile forwardMapping, IMappingFile reverseMapping, Consumer<String> log) {
             this.upstream = upstream;
             this.forwardMapping = forwardMapping;
@@ -156,7 +227,7 @@ public final class OptimizedRenamingTransformer extends RenamingTransformer {
 
         @Override
         public Optional<? extends IClassInfo> getClass(String s) {
-            return this.classCache.computeIfAbsent(s, this::computeClassInfo)
+            return ClassInfoCache.get().get(this, s, this::computeClassInfo)
                 .or(() -> this.upstream.getClass(s));
         }
 
@@ -165,18 +236,18 @@ public final class OptimizedRenamingTransformer extends RenamingTransformer {
             return this.upstream.getClassBytes(this.forwardMapping.remapClass(cls));
         }
 
-        private Optional<IClassInfo> computeClassInfo(String cls) {
+        private Optional<ClassInfoCache.Weighted<IClassInfo>> computeClassInfo(String cls) {
             return getClassBytes(cls).map(data -> {
+                // Collect the remapped hierarchy directly instead of writing out remapped class bytes and parsing them again
                 ClassReader reader = new ClassReader(data);
-                ClassWriter writer = new ClassWriter(0);
-                ClassRemapper remapper = new EnhancedClassRemapper(writer, this.remapper, null);
+                ClassHierarchy.ClassRecordBuilder builder = new ClassHierarchy.ClassRecordBuilder();
+                ClassRemapper remapper = new EnhancedClassRemapper(builder, this.remapper, null);
                 MixinTargetAnalyzer analyzer = new MixinTargetAnalyzer(Opcodes.ASM9, remapper);
-                reader.accept(analyzer, ClassReader.SKIP_CODE);
+                reader.accept(analyzer, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
                 analyzer.targets.remove(cls);
 
-                byte[] remapped = writer.toByteArray();
-                IClassInfo info = new ClassProviderImpl.ClassInfo(remapped);
-                return !analyzer.targets.isEmpty() ? new MixinClassInfo(info, analyzer.targets) : info;
+                ClassHierarchy.ClassRecord info = builder.build();
+                return new ClassInfoCache.Weighted<>(!analyzer.targets.isEmpty() ? new MixinClassInfo(info, Set.copyOf(analyzer.targets)) : info, info.estimateSize());
             });
         }
 
@@ -188,6 +259,8 @@ public final class OptimizedRenamingTransformer extends RenamingTransformer {
 
     private static class MixinAwareEnhancedRemapper extends EnhancedRemapper {
         private final IntermediateMapping flatMappings;
+        // Memoized inheritance-aware lookups, shared by all threads using this remapper
+        private final ClassHierarchy hierarchy = new ClassHierarchy();
 
         public MixinAwareEnhancedRemapper(ClassProvider classProvider, IMappingFile map, IntermediateMapping flatMappings, Consumer<String> log) {
             super(classProvider, map, log);
@@ -209,6 +282,10 @@ public final class OptimizedRenamingTransformer extends RenamingTransformer {
             if (fastMapped != null) {
                 return fastMapped;
             }
+            return this.hierarchy.mapFieldName(owner, name, descriptor, () -> resolveFieldName(owner, name, descriptor));
+        }
+
+        private String resolveFieldName(String owner, String name, String descriptor) {
             return this.classProvider.getClass(owner)
                 .map(cls -> {
                     if (cls instanceof MixinClassInfo mcls) {
@@ -230,6 +307,10 @@ public final class OptimizedRenamingTransformer extends RenamingTransformer {
             if (fastMapped != null) {
                 return fastMapped;
             }
+            return this.hierarchy.mapMethodName(owner, name, descriptor, () -> resolveMethodName(owner, name, descriptor));
+        }
+
+        private String resolveMethodName(String owner, String name, String descriptor) {
             return this.classProvider.getClass(owner)
                 .map(cls -> {
                     // Handle methods belonging to interfaces added through @Implements
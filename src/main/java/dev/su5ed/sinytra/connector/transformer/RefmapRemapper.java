@@ -1,13 +1,13 @@
 package dev.su5ed.sinytra.connector.transformer;
 
-import com.google.gson.Gson;
 import com.mojang.logging.LogUtils;
 import dev.su5ed.sinytra.connector.ConnectorUtil;
+import dev.su5ed.sinytra.connector.transformer.jar.LibraryIndex;
 import net.minecraftforge.fart.api.Transformer;
-import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.spongepowered.asm.util.Constants;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -17,39 +17,47 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.io.Writer;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class RefmapRemapper implements Transformer {
     private static final Logger LOGGER = LogUtils.getLogger();
-    private static final Gson GSON = new Gson();
     private static final String INTERMEDIARY_MAPPING_ENV = "named:intermediary";
     private static final String SRG_MAPPING_ENV = "searge";
+    private static final Map<String, String> REPLACEMENTS = Map.of(INTERMEDIARY_MAPPING_ENV, SRG_MAPPING_ENV);
 
     public record RefmapFiles(SrgRemappingReferenceMapper.SimpleRefmap merged, Map<String, SrgRemappingReferenceMapper.SimpleRefmap> files) {}
 
-    public static RefmapFiles processRefmaps(Path input, Collection<String> refmaps, SrgRemappingReferenceMapper remapper, List<Path> libs) throws IOException {
-        SrgRemappingReferenceMapper.SimpleRefmap results = new SrgRemappingReferenceMapper.SimpleRefmap(Map.of(), Map.of());
+    public static RefmapFiles processRefmaps(Path input, Collection<String> refmaps, Supplier<SrgRemappingReferenceMapper> remapper, LibraryIndex libraryIndex) throws IOException {
+        SrgRemappingReferenceMapper.SimpleRefmap results = new SrgRemappingReferenceMapper.SimpleRefmap();
         Map<String, SrgRemappingReferenceMapper.SimpleRefmap> refmapFiles = new HashMap<>();
-        try (FileSystem fs = FileSystems.newFileSystem(input)) {
+        if (refmaps.isEmpty()) {
+            return new RefmapFiles(results, refmapFiles);
+        }
+        try (ZipFile zipFile = new ZipFile(input.toFile())) {
             for (String refmap : refmaps) {
-                Path refmapPath = fs.getPath(refmap);
-                if (Files.notExists(refmapPath)) {
-                    refmapPath = findRefmapOnClasspath(refmap, input, libs);
+                ZipEntry entry = zipFile.getEntry(refmap);
+                SrgRemappingReferenceMapper.SimpleRefmap remapped;
+                if (entry != null) {
+                    try (InputStream is = zipFile.getInputStream(entry)) {
+                        remapped = remapRefmap(is, remapper.get());
+                    }
+                }
+                else {
+                    remapped = libraryIndex.readResource(refmap, is -> remapRefmap(is, remapper.get()));
                 }
-                if (refmapPath != null) {
-                    byte[] data = Files.readAllBytes(refmapPath);
-                    SrgRemappingReferenceMapper.SimpleRefmap remapped = remapRefmapInPlace(data, remapper);
+                if (remapped != null) {
                     refmapFiles.put(refmap, remapped);
-                    results = results.merge(remapped);
+                    results.putAll(remapped);
                 }
                 else {
                     LOGGER.warn("Refmap remapper could not find refmap file {}", refmap);
@@ -59,36 +67,10 @@ public class RefmapRemapper implements Transformer {
         return new RefmapFiles(results, refmapFiles);
     }
 
-    @Nullable
-    private static Path findRefmapOnClasspath(String resource, Path exclude, List<Path> libs) {
-        for (Path lib : libs) {
-            if (lib == exclude) {
-                continue;
-            }
-            Path basePath;
-            if (Files.isDirectory(lib)) {
-                basePath = lib;
-            } else {
-                try {
-                    FileSystem fs = FileSystems.newFileSystem(lib);
-                    basePath = fs.getPath("");
-                } catch (Exception e) {
-                    LOGGER.error("Error opening jar file", e);
-                    return null;
-                }
-            }
-            Path path = basePath.resolve(resource);
-            if (Files.exists(path)) {
-                return path;
-            }
-        }
-        return null;
-    }
-
     private final Collection<String> visibleMixinConfigs;
     private final Map<String, SrgRemappingReferenceMapper.SimpleRefmap> files;
 
-    private boolean hasManifest;
+    private volatile boolean hasManifest;
 
     public RefmapRemapper(Collection<String> visibleMixinConfigs, Map<String, SrgRemappingReferenceMapper.SimpleRefmap> files) {
         this.visibleMixinConfigs = visibleMixinConfigs;
@@ -100,9 +82,12 @@ public class RefmapRemapper implements Transformer {
         String name = entry.getName();
         if (this.files.containsKey(name)) {
             try (ByteArrayOutputStream byteStream = new ByteArrayOutputStream()) {
-                try (Writer writer = new OutputStreamWriter(byteStream)) {
-                    this.files.get(name).write(writer);
-                    writer.flush();
+                // Refmap entries may be copied by mixin classes being patched on other threads
+                synchronized (this.files) {
+                    try (Writer writer = new OutputStreamWriter(byteStream, StandardCharsets.UTF_8)) {
+                        this.files.get(name).write(writer);
+                        writer.flush();
+                    }
                 }
                 byte[] data = byteStream.toByteArray();
                 return ResourceEntry.create(name, entry.getTime(), data);
@@ -148,10 +133,8 @@ public class RefmapRemapper implements Transformer {
         }
     }
 
-    private static SrgRemappingReferenceMapper.SimpleRefmap remapRefmapInPlace(byte[] data, SrgRemappingReferenceMapper remapper) {
-        Reader reader = new InputStreamReader(new ByteArrayInputStream(data));
-        SrgRemappingReferenceMapper.SimpleRefmap simpleRefmap = GSON.fromJson(reader, SrgRemappingReferenceMapper.SimpleRefmap.class);
-        Map<String, String> replacements = Map.of(INTERMEDIARY_MAPPING_ENV, SRG_MAPPING_ENV);
-        return remapper.remap(simpleRefmap, replacements);
+    private static SrgRemappingReferenceMapper.SimpleRefmap remapRefmap(InputStream is, SrgRemappingReferenceMapper remapper) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        return remapper.readRemapped(reader, REPLACEMENTS);
     }
 }
@@ -1,87 +1,200 @@
 package dev.su5ed.sinytra.connector.transformer;
 
-import com.google.common.collect.Maps;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dev.su5ed.sinytra.connector.transformer.jar.MappingTableCache;
 import net.minecraftforge.srgutils.IMappingFile;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.BiFunction;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class SrgRemappingReferenceMapper {
-    private static final Pattern METHOD_REF_PATTERN = Pattern.compile("^(?<owner>L.+?;)?+(?<name>[\\w$<>]+)?(?<desc>\\((?:\\[*(?:[ZCBSIFJD]|L[\\w/$]+;))*\\)(?:\\[*(?:[VZCBSIFJD]|L[\\w/$]+;)))?$");
-    private static final Pattern FIELD_REF_PATTERN = Pattern.compile("^(?<owner>L[\\w/$]+;)?(?<name>\\w+):(?<desc>.+)$");
-
     private final IMappingFile mappingFile;
-    private final Map<String, IMappingFile.IMethod> methods;
-    private final Map<String, IMappingFile.IField> fields;
+    // Original + Descriptor -> Mapped
+    private final MappingTableCache.StringTable methods;
+    // Original -> Mapped
+    private final MappingTableCache.StringTable fields;
 
     public SrgRemappingReferenceMapper(IMappingFile mappingFile) {
         this.mappingFile = mappingFile;
-        this.methods = this.mappingFile.getClasses().stream()
-            .flatMap(cls -> cls.getMethods().stream())
-            .collect(Collectors.toMap(m -> m.getOriginal() + m.getDescriptor(), Function.identity(), (a, b) -> a));
-        this.fields = this.mappingFile.getClasses().stream()
-            .flatMap(cls -> cls.getFields().stream())
-            .collect(Collectors.toMap(IMappingFile.INode::getOriginal, Function.identity(), (a, b) -> a));
+        List<MappingTableCache.StringTable> tables = MappingTableCache.getOrCreateStringTables("reference_members", () -> List.of(
+            this.mappingFile.getClasses().stream()
+                .flatMap(cls -> cls.getMethods().stream())
+                .collect(Collectors.toMap(m -> m.getOriginal() + m.getDescriptor(), IMappingFile.INode::getMapped, (a, b) -> a)),
+            this.mappingFile.getClasses().stream()
+                .flatMap(cls -> cls.getFields().stream())
+                .collect(Collectors.toMap(IMappingFile.INode::getOriginal, IMappingFile.INode::getMapped, (a, b) -> a))
+        ));
+        this.methods = tables.get(0);
+        this.fields = tables.get(1);
     }
 
-    public SimpleRefmap remap(SimpleRefmap refmap, Map<String, String> replacements) {
-        Map<String, Map<String, String>> mappings = remapReferences(refmap.mappings);
-        Map<String, Map<String, Map<String, String>>> data = new HashMap<>();
-        for (Map.Entry<String, Map<String, Map<String, String>>> entry : refmap.data.entrySet()) {
-            String key = entry.getKey();
-            data.put(replacements.getOrDefault(key, key), remapReferences(entry.getValue()));
+    /**
+     * Read a refmap from its JSON form, remapping each reference as it is read.
+     *
+     * @param reader       the refmap source
+     * @param replacements names of mapping environments to replace in the refmap's data
+     * @return the remapped refmap
+     */
+    public SimpleRefmap readRemapped(Reader reader, Map<String, String> replacements) throws IOException {
+        SimpleRefmap refmap = new SimpleRefmap();
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (name.equals("mappings") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                readReferences(json, refmap.mappings);
+            }
+            else if (name.equals("data") && json.peek() == JsonToken.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String key = json.nextName();
+                    if (json.peek() == JsonToken.BEGIN_OBJECT) {
+                        readReferences(json, refmap.data.computeIfAbsent(replacements.getOrDefault(key, key), k -> new HashMap<>()));
+                    }
+                    else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            }
+            else {
+                json.skipValue();
+            }
         }
-        return new SimpleRefmap(mappings, data);
+        json.endObject();
+        return refmap;
     }
 
-    private Map<String, Map<String, String>> remapReferences(Map<String, Map<String, String>> map) {
-        Map<String, Map<String, String>> mapped = Maps.newHashMap();
-        for (Map.Entry<String, Map<String, String>> entry : map.entrySet()) {
-            Map<String, String> refEntries = new HashMap<>();
-            for (Map.Entry<String, String> refEntry : entry.getValue().entrySet()) {
-                String reference = refEntry.getValue();
-                refEntries.put(refEntry.getKey(), remapRef(reference));
+    private void readReferences(JsonReader json, Map<String, Map<String, String>> map) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String cls = json.nextName();
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
             }
-            mapped.put(entry.getKey(), refEntries);
+            Map<String, String> refEntries = map.computeIfAbsent(cls, k -> new HashMap<>());
+            json.beginObject();
+            while (json.hasNext()) {
+                String key = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.nextNull();
+                }
+                else {
+                    refEntries.put(key, remapRef(json.nextString()));
+                }
+            }
+            json.endObject();
         }
-        return mapped;
+        json.endObject();
     }
 
-    private String remapRef(String reference) {
-        Matcher methodMatcher = METHOD_REF_PATTERN.matcher(reference);
-        if (methodMatcher.matches()) {
-            return remapRefMapEntry(methodMatcher, "", (name, desc) -> this.methods.get(name + desc));
+    // Single pass equivalent of matching METHOD_REF_PATTERN, then FIELD_REF_PATTERN, falling back to a class name
+    // Method: ^(?<owner>L.+?;)?+(?<name>[\w$<>]+)?(?<desc>\((?:\[*(?:[ZCBSIFJD]|L[\w/$]+;))*\)(?:\[*(?:[VZCBSIFJD]|L[\w/$]+;)))?$
+    // Field: ^(?<owner>L[\w/$]+;)?(?<name>\w+):(?<desc>.+)$
+    String remapRef(String reference) {
+        int length = reference.length();
+        int ownerEnd = 0;
+        if (length > 0 && reference.charAt(0) == 'L') {
+            int semicolon = reference.indexOf(';', 2);
+            ownerEnd = semicolon != -1 ? semicolon + 1 : 0;
+        }
+        // Method reference
+        int nameEnd = ownerEnd;
+        while (nameEnd < length && isMethodNameChar(reference.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == length || reference.charAt(nameEnd) == '(' && isMethodDescriptor(reference, nameEnd)) {
+            String name = nameEnd > ownerEnd ? reference.substring(ownerEnd, nameEnd) : null;
+            String desc = nameEnd < length ? reference.substring(nameEnd) : null;
+            String mapped = name != null && desc != null ? this.methods.get(name + desc) : null;
+            return remapRefMapEntry(ownerEnd > 0 ? reference.substring(0, ownerEnd) : null, name, mapped, "", desc);
+        }
+        // Field reference
+        int fieldOwnerEnd = ownerEnd > 0 && isClassName(reference, 1, ownerEnd - 1) ? ownerEnd : 0;
+        int colon = fieldOwnerEnd;
+        while (colon < length && isNameChar(reference.charAt(colon))) {
+            colon++;
         }
-        Matcher fieldMatcher = FIELD_REF_PATTERN.matcher(reference);
-        if (fieldMatcher.matches()) {
-            return remapRefMapEntry(fieldMatcher, ":", (name, desc) -> this.fields.get(name));
+        if (colon > fieldOwnerEnd && colon < length - 1 && reference.charAt(colon) == ':' && reference.indexOf('\n', colon) == -1) {
+            String name = reference.substring(fieldOwnerEnd, colon);
+            return remapRefMapEntry(fieldOwnerEnd > 0 ? reference.substring(0, fieldOwnerEnd) : null, name, this.fields.get(name), ":", reference.substring(colon + 1));
         }
         return this.mappingFile.remapClass(reference);
     }
 
-    private <T extends IMappingFile.INode> String remapRefMapEntry(Matcher matcher, String separator, BiFunction<String, String, T> nodeFunction) {
-        String owner = matcher.group("owner");
-        String name = matcher.group("name");
-        String desc = matcher.group("desc");
-        T node = name != null ? nodeFunction.apply(name, desc) : null;
-        String mappedName = node != null ? node.getMapped() : name != null ? name : "";
-
+    private String remapRefMapEntry(@Nullable String owner, @Nullable String name, @Nullable String mapped, String separator, @Nullable String desc) {
+        String mappedName = mapped != null ? mapped : name != null ? name : "";
         String mappedOwner = owner != null ? this.mappingFile.remapDescriptor(owner) : "";
         String mappedDesc = desc != null ? this.mappingFile.remapDescriptor(desc) : "";
         return mappedOwner + mappedName + separator + mappedDesc;
     }
 
+    // Validates a complete method descriptor starting at the opening parenthesis
+    private static boolean isMethodDescriptor(String str, int start) {
+        int length = str.length();
+        int i = start + 1;
+        while (i < length && str.charAt(i) != ')') {
+            i = skipType(str, i, false);
+            if (i == -1) {
+                return false;
+            }
+        }
+        return i < length && skipType(str, i + 1, true) == length;
+    }
+
+    // Returns the index following a field type, or -1 if there is none
+    private static int skipType(String str, int i, boolean allowVoid) {
+        int length = str.length();
+        while (i < length && str.charAt(i) == '[') {
+            i++;
+        }
+        if (i >= length) {
+            return -1;
+        }
+        char c = str.charAt(i);
+        if (c == 'L') {
+            int end = str.indexOf(';', i + 1);
+            return end > i + 1 && isClassName(str, i + 1, end) ? end + 1 : -1;
+        }
+        return "ZCBSIFJD".indexOf(c) != -1 || allowVoid && c == 'V' ? i + 1 : -1;
+    }
+
+    private static boolean isClassName(String str, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            if (c != '/' && c != '$' && !isNameChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMethodNameChar(char c) {
+        return c == '$' || c == '<' || c == '>' || isNameChar(c);
+    }
+
+    // Equivalent to \w
+    private static boolean isNameChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
     public static class SimpleRefmap {
         public final Map<String, Map<String, String>> mappings;
         public final Map<String, Map<String, Map<String, String>>> data;
 
-        @SuppressWarnings("unused")
         public SimpleRefmap() {
             this.mappings = new HashMap<>();
             this.data = new HashMap<>();
@@ -92,16 +205,43 @@ public class SrgRemappingReferenceMapper {
             this.data = data;
         }
 
-        public void write(Appendable writer) {
-            new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(this, writer);
+        public void write(Writer writer) throws IOException {
+            JsonWriter json = new JsonWriter(writer);
+            json.setIndent("  ");
+            json.setHtmlSafe(false);
+            json.beginObject();
+            json.name("mappings");
+            writeReferences(json, this.mappings);
+            json.name("data");
+            json.beginObject();
+            for (Map.Entry<String, Map<String, Map<String, String>>> entry : this.data.entrySet()) {
+                json.name(entry.getKey());
+                writeReferences(json, entry.getValue());
+            }
+            json.endObject();
+            json.endObject();
+            json.flush();
+        }
+
+        private static void writeReferences(JsonWriter json, Map<String, Map<String, String>> map) throws IOException {
+            json.beginObject();
+            for (Map.Entry<String, Map<String, String>> entry : map.entrySet()) {
+                json.name(entry.getKey());
+                json.beginObject();
+                for (Map.Entry<String, String> ref : entry.getValue().entrySet()) {
+                    json.name(ref.getKey()).value(ref.getValue());
+                }
+                json.endObject();
+            }
+            json.endObject();
         }
-        
-        public SimpleRefmap merge(SrgRemappingReferenceMapper.SimpleRefmap other) {
-            Map<String, Map<String, String>> mergeMappings = new HashMap<>(this.mappings);
-            mergeMappings.putAll(other.mappings);
-            Map<String, Map<String, Map<String, String>>> mergeData = new HashMap<>(this.data);
-            mergeData.putAll(other.data);
-            return new SimpleRefmap(mergeMappings, mergeData);
+
+        /**
+         * Add all entries of another refmap to this one. Nested maps are shared rather than copied.
+         */
+        public void putAll(SimpleRefmap other) {
+            this.mappings.putAll(other.mappings);
+            this.data.putAll(other.data);
         }
     }
 }
@@ -0,0 +1,168 @@
+package dev.su5ed.sinytra.connector.transformer.jar;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static dev.su5ed.sinytra.connector.transformer.jar.JarTransformer.TRANSFORM_MARKER;
+
+/**
+ * Reads adapter data that has been compiled into a binary form at build time by the {@code compileAdapterData} task.
+ * The original JSON document is split into elements, which are indexed by the class names they target.
+ * Elements are only decoded once requested, so that we don't deserialize data for classes no mod touches.
+ * <p>
+ * File layout:
+ * <pre>
+ * int magic, int version, byte root type
+ * int element count, (int offset, int length) per element
+ * int key count, (UTF key, int element count, int element index...) per key
+ * int blob length, UTF-8 encoded JSON of all elements
+ * </pre>
+ * Elements that can't be attributed to specific classes are stored under the {@link #WILDCARD} key
+ * and are always included.
+ */
+public final class AdapterDataIndex {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int MAGIC = 0x434E4144; // CNAD
+    private static final int FORMAT_VERSION = 1;
+    public static final String WILDCARD = "*";
+
+    // Elements are entries of a root array
+    private static final byte ROOT_ARRAY = 0;
+    // Elements are single-entry objects of a root object
+    private static final byte ROOT_OBJECT = 1;
+    // A single element containing the whole document
+    private static final byte ROOT_OTHER = 2;
+
+    private final byte rootType;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final Map<String, int[]> keys;
+    private final byte[] blob;
+
+    private AdapterDataIndex(byte rootType, int[] offsets, int[] lengths, Map<String, int[]> keys, byte[] blob) {
+        this.rootType = rootType;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.keys = keys;
+        this.blob = blob;
+    }
+
+    /**
+     * Read a compiled adapter data file.
+     *
+     * @param path the file path
+     * @return the index, or an empty optional if the file is not present or is in an unsupported format
+     */
+    public static Optional<AdapterDataIndex> load(Path path) {
+        if (Files.notExists(path)) {
+            return Optional.empty();
+        }
+        try (InputStream is = Files.newInputStream(path); DataInputStream dis = new DataInputStream(is)) {
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+                LOGGER.warn(TRANSFORM_MARKER, "Ignoring adapter data index {} in unsupported format", path);
+                return Optional.empty();
+            }
+            byte rootType = dis.readByte();
+            int elementCount = dis.readInt();
+            int[] offsets = new int[elementCount];
+            int[] lengths = new int[elementCount];
+            for (int i = 0; i < elementCount; i++) {
+                offsets[i] = dis.readInt();
+                lengths[i] = dis.readInt();
+            }
+            int keyCount = dis.readInt();
+            Map<String, int[]> keys = new HashMap<>(keyCount * 2);
+            for (int i = 0; i < keyCount; i++) {
+                String key = dis.readUTF();
+                int[] elements = new int[dis.readInt()];
+                for (int j = 0; j < elements.length; j++) {
+                    elements[j] = dis.readInt();
+                }
+                keys.put(key, elements);
+            }
+            byte[] blob = new byte[dis.readInt()];
+            dis.readFully(blob);
+            return Optional.of(new AdapterDataIndex(rootType, offsets, lengths, keys, blob));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Find elements relevant to the given classes.
+     *
+     * @param classNames internal names of classes
+     * @return sorted indices of elements targeting any of the classes, along with wildcard elements
+     */
+    public int[] selectElements(Collection<String> classNames) {
+        BitSet selected = new BitSet(this.offsets.length);
+        markElements(WILDCARD, selected);
+        for (String name : classNames) {
+            markElements(name, selected);
+        }
+        return selected.stream().toArray();
+    }
+
+    /**
+     * Decode a single element.
+     * For root objects, the element is a single-entry object.
+     *
+     * @param index the element index
+     * @return the decoded element
+     */
+    public JsonElement getElement(int index) {
+        String json = new String(this.blob, this.offsets[index], this.lengths[index], StandardCharsets.UTF_8);
+        return JsonParser.parseString(json);
+    }
+
+    /**
+     * Reconstruct the original document, limited to elements relevant to the given classes.
+     *
+     * @param classNames internal names of classes
+     * @return the partial document
+     */
+    public JsonElement select(Collection<String> classNames) {
+        int[] elements = selectElements(classNames);
+        return switch (this.rootType) {
+            case ROOT_ARRAY -> {
+                JsonArray array = new JsonArray(elements.length);
+                Arrays.stream(elements).forEach(i -> array.add(getElement(i)));
+                yield array;
+            }
+            case ROOT_OBJECT -> {
+                JsonObject object = new JsonObject();
+                Arrays.stream(elements).forEach(i -> getElement(i).getAsJsonObject().entrySet().forEach(e -> object.add(e.getKey(), e.getValue())));
+                yield object;
+            }
+            case ROOT_OTHER -> getElement(0);
+            default -> throw new IllegalStateException("Unknown adapter data root type " + this.rootType);
+        };
+    }
+
+    private void markElements(String key, BitSet selected) {
+        int[] elements = this.keys.get(key);
+        if (elements != null) {
+            for (int element : elements) {
+                selected.set(element);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package dev.su5ed.sinytra.connector.transformer.jar;
+
+import net.minecraftforge.fart.api.ClassProvider;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Stores resolved class hierarchy data shared by all transform threads.
+ * Classes are described by compact, immutable records holding their super class, interfaces and member tables,
+ * which are read directly from class visitor events rather than from rewritten class bytes.
+ * Results of inheritance-aware member lookups are memoized per owner, name and descriptor.
+ */
+public final class ClassHierarchy {
+    // Rough size in bytes of a record and each of its members, used to weigh cache entries
+    private static final int CLASS_RECORD_SIZE = 96;
+    private static final int MEMBER_RECORD_SIZE = 48;
+
+    private final Map<MemberKey, String> fieldNames = new ConcurrentHashMap<>();
+    private final Map<MemberKey, String> methodNames = new ConcurrentHashMap<>();
+
+    /**
+     * Look up a memoized field name, computing it if it hasn't been resolved yet.
+     * The computation runs outside of any lock, so concurrent lookups of the same member may both compute it.
+     */
+    public String mapFieldName(String owner, String name, String desc, Supplier<String> mapper) {
+        return memoize(this.fieldNames, new MemberKey(owner, name, desc), mapper);
+    }
+
+    /**
+     * Look up a memoized method name, computing it if it hasn't been resolved yet.
+     * The computation runs outside of any lock, so concurrent lookups of the same member may both compute it.
+     */
+    public String mapMethodName(String owner, String name, String desc, Supplier<String> mapper) {
+        return memoize(this.methodNames, new MemberKey(owner, name, desc), mapper);
+    }
+
+    private static String memoize(Map<MemberKey, String> map, MemberKey key, Supplier<String> mapper) {
+        String mapped = map.get(key);
+        if (mapped == null) {
+            mapped = mapper.get();
+            String existing = map.putIfAbsent(key, mapped);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return mapped;
+    }
+
+    private record MemberKey(String owner, String name, @Nullable String desc) {}
+
+    public record ClassRecord(int access, String name, @Nullable String superName, List<String> interfaces, Map<String, MemberRecord> fields, Map<String, MemberRecord> methods) implements ClassProvider.IClassInfo {
+        /**
+         * {@return approximate retained size of this record in bytes}
+         */
+        public int estimateSize() {
+            return CLASS_RECORD_SIZE + MEMBER_RECORD_SIZE * (this.fields.size() + this.methods.size());
+        }
+
+        //@formatter:off
+        @Override public int getAccess() {return this.access;}
+        @Override public String getName() {return this.name;}
+        @Override public @Nullable String getSuper() {return this.superName;}
+        @Override public Collection<String> getInterfaces() {return this.interfaces;}
+        @Override public Collection<? extends ClassProvider.IFieldInfo> getFields() {return this.fields.values();}
+        @Override public Optional<? extends ClassProvider.IFieldInfo> getField(String name) {return Optional.ofNullable(this.fields.get(name));}
+        @Override public Collection<? extends ClassProvider.IMethodInfo> getMethods() {return this.methods.values();}
+        @Override public Optional<? extends ClassProvider.IMethodInfo> getMethod(String name, String desc) {return Optional.ofNullable(this.methods.get(name + desc));}
+        //@formatter:on
+    }
+
+    public record MemberRecord(int access, String name, String descriptor) implements ClassProvider.IFieldInfo, ClassProvider.IMethodInfo {
+        //@formatter:off
+        @Override public int getAccess() {return this.access;}
+        @Override public String getName() {return this.name;}
+        @Override public String getDescriptor() {return this.descriptor;}
+        //@formatter:on
+    }
+
+    /**
+     * Collects the class header and member signatures of visited classes into a {@link ClassRecord}.
+     * Visits of member contents are skipped entirely.
+     */
+    public static class ClassRecordBuilder extends ClassVisitor {
+        private int access;
+        private String name;
+        private String superName;
+        private List<String> interfaces = List.of();
+        private final Map<String, MemberRecord> fields = new LinkedHashMap<>();
+        private final Map<String, MemberRecord> methods = new LinkedHashMap<>();
+
+        public ClassRecordBuilder() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.access = access;
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces != null ? List.of(interfaces) : List.of();
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            this.fields.putIfAbsent(name, new MemberRecord(access, name, descriptor));
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            this.methods.putIfAbsent(name + descriptor, new MemberRecord(access, name, descriptor));
+            return null;
+        }
+
+        public ClassRecord build() {
+            return new ClassRecord(this.access, this.name, this.superName, this.interfaces, Map.copyOf(this.fields), Map.copyOf(this.methods));
+        }
+    }
+}
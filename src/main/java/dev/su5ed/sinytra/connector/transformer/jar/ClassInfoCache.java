@@ -0,0 +1,105 @@
+package dev.su5ed.sinytra.connector.transformer.jar;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static dev.su5ed.sinytra.connector.transformer.jar.JarTransformer.TRANSFORM_MARKER;
+
+/**
+ * A memory-bounded cache of parsed class data shared by all class providers used during jar transformation.
+ * Entries are weighed by the size of the class file they were created from and the least recently used ones
+ * are evicted once the configured budget is exceeded.
+ */
+public final class ClassInfoCache {
+    // Maximum size in megabytes of class files whose parsed data is kept in memory
+    private static final long BUDGET_MB = Long.getLong("connector.transform.classCacheBudget", 256);
+    // Approximate overhead in bytes of a single entry, also used for classes that could not be found
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final ClassInfoCache INSTANCE = new ClassInfoCache(BUDGET_MB * 1024 * 1024);
+    private static final Entry MISSING = new Entry(Optional.empty(), ENTRY_OVERHEAD);
+
+    private final Cache<Key, Entry> cache;
+
+    public static ClassInfoCache get() {
+        return INSTANCE;
+    }
+
+    private ClassInfoCache(long budget) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(budget)
+            .weigher((Key key, Entry entry) -> entry.weight())
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Get a cached class, loading it if it is not present.
+     *
+     * @param owner  the object owning the cached value, used to separate entries of different providers
+     * @param name   the class name
+     * @param loader function loading the class along with its weight
+     * @return the cached class, or an empty optional if it could not be found
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> get(Object owner, String name, Function<String, Optional<Weighted<T>>> loader) {
+        try {
+            Entry entry = this.cache.get(new Key(owner, name), () -> loader.apply(name)
+                .map(weighted -> new Entry(Optional.of(weighted.value()), ENTRY_OVERHEAD + weighted.weight()))
+                .orElse(MISSING));
+            return (Optional<T>) entry.value();
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Remove all entries belonging to an owner, e.g. once it is closed.
+     */
+    public void invalidate(Object owner) {
+        this.cache.asMap().keySet().removeIf(key -> key.owner() == owner);
+    }
+
+    /**
+     * Remove all entries, releasing their owners. Called once all jars have been transformed.
+     */
+    public void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    public void logStatistics() {
+        CacheStats stats = this.cache.stats();
+        LOGGER.debug(TRANSFORM_MARKER, "Class info cache: {} hits, {} misses, {} evictions, {} entries", stats.hitCount(), stats.missCount(), stats.evictionCount(), this.cache.size());
+    }
+
+    public record Weighted<T>(T value, int weight) {}
+
+    private record Key(Object owner, String name) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other && this.owner == other.owner && this.name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.owner) + this.name.hashCode();
+        }
+    }
+
+    private record Entry(Optional<?> value, int weight) {}
+}
@@ -7,99 +7,179 @@ import net.minecraftforge.srgutils.IMappingFile;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 import static dev.su5ed.sinytra.connector.transformer.jar.JarTransformer.TRANSFORM_MARKER;
 
 public class IntermediateMapping {
-    private static final Map<String, IntermediateMapping> INTERMEDIATE_MAPPINGS_CACHE = new HashMap<>();
+    private static final Map<String, IntermediateMapping> INTERMEDIATE_MAPPINGS_CACHE = new ConcurrentHashMap<>();
     // Filter out non-obfuscated method names used in mapping namespaces as those don't need
     // to be remapped and will only cause issues with our barebones find/replace remapper
     private static final Map<String, Collection<String>> MAPPING_PREFIXES = Map.of(
         "intermediary", Set.of("net/minecraft/class_", "field_", "method_", "comp_")
     );
     private static final Logger LOGGER = LogUtils.getLogger();
+    // Marks names that map to different values depending on their descriptor. Compared by identity.
+    @SuppressWarnings("StringOperationCanBeSimplified")
+    private static final String AMBIGUOUS = new String("<ambiguous>");
+    // String pool offset of ambiguous values
+    private static final int AMBIGUOUS_OFFSET = -1;
+    private static final long NO_KEY = 0;
+    private static final int KIND_CLASS = 1;
+    private static final int KIND_FIELD = 2;
+    private static final int KIND_METHOD = 3;
+    private static final int KIND_COMPONENT = 4;
 
-    // Original -> Mapped
-    private final Map<String, String> mappings;
-    // Original + Descriptor -> Mapped
-    private final Map<String, String> extendedMappings;
+    // Original -> Mapped, keyed by the kind and numeric id of intermediary names
+    private final NameTable names;
+    // Original + Descriptor -> Mapped, for ambiguous names
+    private final DescriptorTable descriptors;
+    // Names that can't be keyed by their numeric id
+    private final Map<String, String> fallbackMappings;
+    private final Map<String, Map<String, String>> fallbackExtendedMappings;
 
     public static IntermediateMapping get(String sourceNamespace) {
-        IntermediateMapping existing = INTERMEDIATE_MAPPINGS_CACHE.get(sourceNamespace);
-        if (existing == null) {
-            synchronized (JarTransformer.class) {
-                existing = INTERMEDIATE_MAPPINGS_CACHE.get(sourceNamespace);
-                if (existing != null) {
-                    return existing;
-                }
+        return INTERMEDIATE_MAPPINGS_CACHE.computeIfAbsent(sourceNamespace, ns -> MappingTableCache.getOrCreate("intermediate_" + ns, IntermediateMapping::read, () -> create(ns)));
+    }
 
-                LOGGER.debug(TRANSFORM_MARKER, "Creating flat intermediate mapping for namespace {}", sourceNamespace);
-                // Intermediary sometimes contains duplicate names for different methods (why?). We exclude those.
-                Collection<String> prefixes = MAPPING_PREFIXES.get(sourceNamespace);
-                MappingResolverImpl resolver = FabricLoaderImpl.INSTANCE.getMappingResolver();
-                Map<String, String> resolved = new HashMap<>();
-                Map<String, IMappingFile.INode> buffer = new HashMap<>();
-                Map<String, String> extendedMappings = new HashMap<>();
-                resolver.getCurrentMap(sourceNamespace).getClasses().stream()
-                    .flatMap(cls -> Stream.concat(Stream.of(cls), Stream.concat(cls.getFields().stream(), cls.getMethods().stream()))
-                        .filter(node -> prefixes.stream().anyMatch(node.getOriginal()::startsWith)))
-                    .forEach(node -> {
-                        String original = node.getOriginal();
-                        String mapped = node.getMapped();
-                        String mapping = resolved.get(original);
-                        if (mapping != null && !mapping.equals(mapped)) {
-                            resolved.remove(original);
-                            extendedMappings.put(getMappingKey(buffer.remove(original)), mapping);
-                            extendedMappings.put(getMappingKey(node), mapped);
-                        }
-                        else if (!extendedMappings.containsKey(getMappingKey(node))) {
-                            resolved.put(original, mapped);
-                            buffer.put(original, node);
-                        }
-                    });
-                IntermediateMapping mapping = new IntermediateMapping(resolved, extendedMappings);
-                INTERMEDIATE_MAPPINGS_CACHE.put(sourceNamespace, mapping);
-                return mapping;
+    private static byte[] create(String sourceNamespace) {
+        LOGGER.debug(TRANSFORM_MARKER, "Creating flat intermediate mapping for namespace {}", sourceNamespace);
+        Collection<String> prefixes = MAPPING_PREFIXES.get(sourceNamespace);
+        MappingResolverImpl resolver = FabricLoaderImpl.INSTANCE.getMappingResolver();
+        List<IMappingFile.INode> nodes = resolver.getCurrentMap(sourceNamespace).getClasses().stream()
+            .flatMap(cls -> Stream.concat(Stream.of(cls), Stream.concat(cls.getFields().stream(), cls.getMethods().stream()))
+                .filter(node -> prefixes.stream().anyMatch(node.getOriginal()::startsWith)))
+            .toList();
+        // Intermediary sometimes contains duplicate names for different methods (why?).
+        // These are marked as ambiguous and can only be mapped using their descriptor.
+        Map<String, String> resolved = new HashMap<>();
+        for (IMappingFile.INode node : nodes) {
+            resolved.merge(node.getOriginal(), node.getMapped(), (existing, mapped) -> existing.equals(mapped) ? existing : AMBIGUOUS);
+        }
+        Map<String, Map<String, String>> extendedMappings = new HashMap<>();
+        for (IMappingFile.INode node : nodes) {
+            String desc = getDescriptor(node);
+            if (desc != null && resolved.get(node.getOriginal()) == AMBIGUOUS) {
+                extendedMappings.computeIfAbsent(node.getOriginal(), s -> new HashMap<>()).put(desc, node.getMapped());
             }
         }
-        return existing;
+        try {
+            return serialize(resolved, extendedMappings);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private static String getMappingKey(IMappingFile.INode node) {
+    @Nullable
+    private static String getDescriptor(IMappingFile.INode node) {
         if (node instanceof IMappingFile.IField field) {
-            String desc = field.getDescriptor();
-            return field.getOriginal() + (desc != null ? ":" + desc : "");
+            return field.getDescriptor();
         }
         else if (node instanceof IMappingFile.IMethod method) {
-            return method.getOriginal() + Objects.requireNonNullElse(method.getDescriptor(), "");
+            return method.getDescriptor();
+        }
+        return null;
+    }
+
+    private static byte[] serialize(Map<String, String> mappings, Map<String, Map<String, String>> extendedMappings) throws IOException {
+        MappingTableCache.StringPool.Builder pool = new MappingTableCache.StringPool.Builder();
+        NameTable names = new NameTable(tableSize(mappings.size()));
+        DescriptorTable descriptors = new DescriptorTable(tableSize(extendedMappings.values().stream().mapToInt(Map::size).sum()));
+        Map<String, String> fallbackMappings = new HashMap<>();
+        Map<String, Map<String, String>> fallbackExtendedMappings = new HashMap<>();
+        mappings.forEach((original, mapped) -> {
+            long key = parseKey(original);
+            Map<String, String> byDescriptor = extendedMappings.getOrDefault(original, Map.of());
+            if (key != NO_KEY && names.put(key, pool.add(original), mapped == AMBIGUOUS ? AMBIGUOUS_OFFSET : pool.add(mapped))) {
+                byDescriptor.forEach((desc, mappedByDesc) -> descriptors.put(key, desc.hashCode(), pool.add(desc), pool.add(mappedByDesc)));
+            }
+            else {
+                fallbackMappings.put(original, mapped);
+                if (!byDescriptor.isEmpty()) {
+                    fallbackExtendedMappings.put(original, byDescriptor);
+                }
+            }
+        });
+
+        ByteArrayOutputStream tableData = new ByteArrayOutputStream();
+        DataOutputStream tableOut = new DataOutputStream(tableData);
+        names.write(tableOut);
+        descriptors.write(tableOut);
+        tableOut.writeInt(fallbackMappings.size());
+        for (Map.Entry<String, String> entry : fallbackMappings.entrySet()) {
+            tableOut.writeInt(pool.add(entry.getKey()));
+            tableOut.writeInt(entry.getValue() == AMBIGUOUS ? AMBIGUOUS_OFFSET : pool.add(entry.getValue()));
+        }
+        tableOut.writeInt(fallbackExtendedMappings.size());
+        for (Map.Entry<String, Map<String, String>> entry : fallbackExtendedMappings.entrySet()) {
+            tableOut.writeInt(pool.add(entry.getKey()));
+            tableOut.writeInt(entry.getValue().size());
+            for (Map.Entry<String, String> descEntry : entry.getValue().entrySet()) {
+                tableOut.writeInt(pool.add(descEntry.getKey()));
+                tableOut.writeInt(pool.add(descEntry.getValue()));
+            }
         }
-        return node.getOriginal();
+        tableOut.flush();
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(data);
+        pool.write(out);
+        tableData.writeTo(out);
+        out.flush();
+        return data.toByteArray();
     }
 
-    public IntermediateMapping(Map<String, String> mappings, Map<String, String> extendedMappings) {
-        this.mappings = mappings;
-        this.extendedMappings = extendedMappings;
+    private static IntermediateMapping read(ByteBuffer buffer) {
+        MappingTableCache.StringPool pool = MappingTableCache.StringPool.read(buffer);
+        NameTable names = NameTable.read(buffer, pool);
+        DescriptorTable descriptors = DescriptorTable.read(buffer, pool);
+        int fallbackCount = buffer.getInt();
+        Map<String, String> fallbackMappings = new HashMap<>(fallbackCount);
+        for (int i = 0; i < fallbackCount; i++) {
+            String original = pool.get(buffer.getInt());
+            int valueOffset = buffer.getInt();
+            fallbackMappings.put(original, valueOffset == AMBIGUOUS_OFFSET ? AMBIGUOUS : pool.get(valueOffset));
+        }
+        int fallbackExtendedCount = buffer.getInt();
+        Map<String, Map<String, String>> fallbackExtendedMappings = new HashMap<>(fallbackExtendedCount);
+        for (int i = 0; i < fallbackExtendedCount; i++) {
+            String original = pool.get(buffer.getInt());
+            int count = buffer.getInt();
+            Map<String, String> byDescriptor = new HashMap<>(count);
+            for (int j = 0; j < count; j++) {
+                byDescriptor.put(pool.get(buffer.getInt()), pool.get(buffer.getInt()));
+            }
+            fallbackExtendedMappings.put(original, byDescriptor);
+        }
+        return new IntermediateMapping(names, descriptors, fallbackMappings, fallbackExtendedMappings);
+    }
+
+    private IntermediateMapping(NameTable names, DescriptorTable descriptors, Map<String, String> fallbackMappings, Map<String, Map<String, String>> fallbackExtendedMappings) {
+        this.names = names;
+        this.descriptors = descriptors;
+        this.fallbackMappings = fallbackMappings;
+        this.fallbackExtendedMappings = fallbackExtendedMappings;
     }
 
     @Nullable
     public String map(String name) {
-        return this.mappings.get(name);
+        return mapMember(name, null);
     }
 
     @Nullable
     public String mapField(String name, @Nullable String desc) {
-        String mapped = this.mappings.get(name);
-        if (mapped == null) {
-            String qualifier = name + ":" + desc;
-            return this.extendedMappings.get(qualifier);
-        }
-        return mapped;
+        return mapMember(name, desc);
     }
 
     public String mapMethodOrDefault(String name, String desc) {
@@ -109,11 +189,238 @@ public class IntermediateMapping {
 
     @Nullable
     public String mapMethod(String name, String desc) {
-        String mapped = this.mappings.get(name);
-        if (mapped == null) {
-            String qualifier = name + desc;
-            return this.extendedMappings.get(qualifier);
+        return mapMember(name, desc);
+    }
+
+    @Nullable
+    private String mapMember(String name, @Nullable String desc) {
+        long key = parseKey(name);
+        if (key != NO_KEY) {
+            int slot = this.names.find(key);
+            if (slot == -1) {
+                return null;
+            }
+            if (this.names.getOriginal(slot).equals(name)) {
+                String mapped = this.names.getValue(slot);
+                return mapped != AMBIGUOUS ? mapped : desc != null ? this.descriptors.get(key, desc) : null;
+            }
+        }
+        String mapped = this.fallbackMappings.get(name);
+        if (mapped != AMBIGUOUS) {
+            return mapped;
+        }
+        Map<String, String> byDescriptor = this.fallbackExtendedMappings.get(name);
+        return byDescriptor != null && desc != null ? byDescriptor.get(desc) : null;
+    }
+
+    /**
+     * Compute a numeric key for an intermediary name, combining its kind with its id,
+     * e.g. {@code method_12345} or {@code net/minecraft/class_123}.
+     *
+     * @return the key, or {@link #NO_KEY} if the name is not in the intermediary format
+     */
+    private static long parseKey(String name) {
+        int end = name.length();
+        int start = end;
+        while (start > 0 && isDigit(name.charAt(start - 1))) {
+            start--;
+        }
+        // Up to 9 digits always fit into an int
+        if (start == end || end - start > 9 || start == 0 || name.charAt(start - 1) != '_') {
+            return NO_KEY;
+        }
+        int kind;
+        if (name.startsWith("class_", start - 6)) {
+            kind = KIND_CLASS;
+        }
+        else if (start == 7 && name.startsWith("method_")) {
+            kind = KIND_METHOD;
+        }
+        else if (start == 6 && name.startsWith("field_")) {
+            kind = KIND_FIELD;
+        }
+        else if (start == 5 && name.startsWith("comp_")) {
+            kind = KIND_COMPONENT;
+        }
+        else {
+            return NO_KEY;
+        }
+        int id = 0;
+        for (int i = start; i < end; i++) {
+            id = id * 10 + (name.charAt(i) - '0');
+        }
+        return (long) kind << 32 | id;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    private static int tableSize(int entries) {
+        return Integer.highestOneBit(Math.max(entries, 4) * 2 - 1) << 1;
+    }
+
+    // Open addressing table with linear probing, keyed by parsed intermediary names
+    private static final class NameTable {
+        private final long[] keys;
+        private final int[] originalOffsets;
+        private final int[] valueOffsets;
+        @Nullable
+        private final MappingTableCache.StringPool pool;
+        // Lazily decoded strings
+        private final String[] originals;
+        private final String[] values;
+        private final int mask;
+
+        NameTable(int size) {
+            this(new long[size], new int[size], new int[size], null);
+        }
+
+        private NameTable(long[] keys, int[] originalOffsets, int[] valueOffsets, @Nullable MappingTableCache.StringPool pool) {
+            this.keys = keys;
+            this.originalOffsets = originalOffsets;
+            this.valueOffsets = valueOffsets;
+            this.pool = pool;
+            this.originals = new String[keys.length];
+            this.values = new String[keys.length];
+            this.mask = keys.length - 1;
+        }
+
+        static NameTable read(ByteBuffer buffer, MappingTableCache.StringPool pool) {
+            return new NameTable(MappingTableCache.readLongs(buffer), MappingTableCache.readInts(buffer), MappingTableCache.readInts(buffer), pool);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            MappingTableCache.writeLongs(out, this.keys);
+            MappingTableCache.writeInts(out, this.originalOffsets);
+            MappingTableCache.writeInts(out, this.valueOffsets);
+        }
+
+        // Returns false if another name with the same key is already present
+        boolean put(long key, int originalOffset, int valueOffset) {
+            int i = mix(key) & this.mask;
+            while (this.keys[i] != NO_KEY) {
+                if (this.keys[i] == key) {
+                    return false;
+                }
+                i = i + 1 & this.mask;
+            }
+            this.keys[i] = key;
+            this.originalOffsets[i] = originalOffset;
+            this.valueOffsets[i] = valueOffset;
+            return true;
+        }
+
+        int find(long key) {
+            int i = mix(key) & this.mask;
+            long existing;
+            while ((existing = this.keys[i]) != NO_KEY) {
+                if (existing == key) {
+                    return i;
+                }
+                i = i + 1 & this.mask;
+            }
+            return -1;
+        }
+
+        String getOriginal(int slot) {
+            String original = this.originals[slot];
+            if (original == null) {
+                original = this.originals[slot] = this.pool.get(this.originalOffsets[slot]);
+            }
+            return original;
+        }
+
+        String getValue(int slot) {
+            String value = this.values[slot];
+            if (value == null) {
+                int offset = this.valueOffsets[slot];
+                value = this.values[slot] = offset == AMBIGUOUS_OFFSET ? AMBIGUOUS : this.pool.get(offset);
+            }
+            return value;
+        }
+    }
+
+    // Open addressing table with linear probing, keyed by parsed intermediary names and their descriptor
+    private static final class DescriptorTable {
+        private final long[] keys;
+        private final int[] descriptorHashes;
+        private final int[] descriptorOffsets;
+        private final int[] valueOffsets;
+        @Nullable
+        private final MappingTableCache.StringPool pool;
+        // Lazily decoded strings
+        private final String[] descriptors;
+        private final String[] values;
+        private final int mask;
+
+        DescriptorTable(int size) {
+            this(new long[size], new int[size], new int[size], new int[size], null);
+        }
+
+        private DescriptorTable(long[] keys, int[] descriptorHashes, int[] descriptorOffsets, int[] valueOffsets, @Nullable MappingTableCache.StringPool pool) {
+            this.keys = keys;
+            this.descriptorHashes = descriptorHashes;
+            this.descriptorOffsets = descriptorOffsets;
+            this.valueOffsets = valueOffsets;
+            this.pool = pool;
+            this.descriptors = new String[keys.length];
+            this.values = new String[keys.length];
+            this.mask = keys.length - 1;
+        }
+
+        static DescriptorTable read(ByteBuffer buffer, MappingTableCache.StringPool pool) {
+            return new DescriptorTable(MappingTableCache.readLongs(buffer), MappingTableCache.readInts(buffer), MappingTableCache.readInts(buffer), MappingTableCache.readInts(buffer), pool);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            MappingTableCache.writeLongs(out, this.keys);
+            MappingTableCache.writeInts(out, this.descriptorHashes);
+            MappingTableCache.writeInts(out, this.descriptorOffsets);
+            MappingTableCache.writeInts(out, this.valueOffsets);
+        }
+
+        // Descriptors are unique per name, so we don't check for existing entries
+        void put(long key, int descriptorHash, int descriptorOffset, int valueOffset) {
+            int i = mix(key * 31 + descriptorHash) & this.mask;
+            while (this.keys[i] != NO_KEY) {
+                i = i + 1 & this.mask;
+            }
+            this.keys[i] = key;
+            this.descriptorHashes[i] = descriptorHash;
+            this.descriptorOffsets[i] = descriptorOffset;
+            this.valueOffsets[i] = valueOffset;
+        }
+
+        @Nullable
+        String get(long key, String desc) {
+            int hash = desc.hashCode();
+            int i = mix(key * 31 + hash) & this.mask;
+            long existing;
+            while ((existing = this.keys[i]) != NO_KEY) {
+                if (existing == key && this.descriptorHashes[i] == hash && getDescriptor(i).equals(desc)) {
+                    String value = this.values[i];
+                    if (value == null) {
+                        value = this.values[i] = this.pool.get(this.valueOffsets[i]);
+                    }
+                    return value;
+                }
+                i = i + 1 & this.mask;
+            }
+            return null;
+        }
+
+        private String getDescriptor(int slot) {
+            String descriptor = this.descriptors[slot];
+            if (descriptor == null) {
+                descriptor = this.descriptors[slot] = this.pool.get(this.descriptorOffsets[slot]);
+            }
+            return descriptor;
         }
-        return mapped;
     }
 }
@@ -0,0 +1,295 @@
+package dev.su5ed.sinytra.connector.transformer.jar;
+
+import com.mojang.logging.LogUtils;
+import dev.su5ed.sinytra.connector.ConnectorUtil;
+import dev.su5ed.sinytra.connector.locator.EmbeddedDependencies;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static dev.su5ed.sinytra.connector.transformer.jar.JarTransformer.TRANSFORM_MARKER;
+
+/**
+ * CRCs of the input entries a transformed jar was produced from, stored next to the jar.
+ * When the input jar changes, its previous output is kept aside so that only changed entries need to be transformed
+ * again, while the rest are copied from the previous output.
+ * <p>
+ * File layout:
+ * <pre>
+ * int magic, int version, UTF environment version, int count, (UTF name, long crc) per entry
+ * </pre>
+ */
+public final class JarEntryIndex {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String INDEX_SUFFIX = ".entries";
+    private static final String PREVIOUS_SUFFIX = ".prev";
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String META_INF = "META-INF/";
+    static final String SERVICES = META_INF + "services/";
+    private static final int MAGIC = 0x434E4549; // CNEI
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<String, Long> entries;
+
+    private JarEntryIndex(Map<String, Long> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Index the entries of an input jar.
+     */
+    static JarEntryIndex create(File input) throws IOException {
+        Map<String, Long> entries = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(input)) {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                if (!entry.isDirectory()) {
+                    entries.put(entry.getName(), entry.getCrc());
+                }
+            }
+        }
+        return new JarEntryIndex(entries);
+    }
+
+    /**
+     * Read the index of the input a transformed jar was produced from.
+     *
+     * @return the index, or {@code null} if it's missing or was written by a different transformer version
+     */
+    @Nullable
+    static JarEntryIndex read(Path output) {
+        Path path = getIndexPath(output);
+        if (Files.notExists(path)) {
+            return null;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION || !dis.readUTF().equals(EmbeddedDependencies.getJarCacheVersion())) {
+                return null;
+            }
+            int count = dis.readInt();
+            Map<String, Long> entries = new HashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.put(dis.readUTF(), dis.readLong());
+            }
+            return new JarEntryIndex(entries);
+        } catch (IOException e) {
+            LOGGER.warn(TRANSFORM_MARKER, "Failed to read entry index {}", path, e);
+            return null;
+        }
+    }
+
+    void write(Path output) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(getIndexPath(output))))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeUTF(EmbeddedDependencies.getJarCacheVersion());
+            dos.writeInt(this.entries.size());
+            for (Map.Entry<String, Long> entry : this.entries.entrySet()) {
+                dos.writeUTF(entry.getKey());
+                dos.writeLong(entry.getValue());
+            }
+        }
+    }
+
+    Set<String> getEntryNames() {
+        return this.entries.keySet();
+    }
+
+    /**
+     * Compare this index to the index of a previous input.
+     */
+    Diff diff(JarEntryIndex previous) {
+        Set<String> changed = new HashSet<>();
+        Set<String> added = new HashSet<>();
+        for (Map.Entry<String, Long> entry : this.entries.entrySet()) {
+            Long previousCrc = previous.entries.get(entry.getKey());
+            if (!entry.getValue().equals(previousCrc)) {
+                changed.add(entry.getKey());
+                if (previousCrc == null) {
+                    added.add(entry.getKey());
+                }
+            }
+        }
+        Set<String> removed = new HashSet<>(previous.entries.keySet());
+        removed.removeAll(this.entries.keySet());
+        return new Diff(changed, added, removed);
+    }
+
+    /**
+     * Transform the changed entries of an input jar and merge them into a copy of its previous output.
+     * Service provider files are transformed again when classes were added or removed, as nonexistent providers
+     * are stripped when the jar is finalized. Merged entries keep their position in the previous output, so a
+     * modified entry ends up where a full transformation would put it. Added entries are appended by name.
+     *
+     * @param processor      transforms all entries of a jar
+     * @param input          the input jar this index was created from
+     * @param previousOutput the output of the previous input
+     * @param output         the merged output
+     * @param diff           changes to the input since the previous output was produced
+     */
+    void transformChanges(JarProcessor processor, File input, Path previousOutput, Path output, Diff diff) throws IOException {
+        Set<String> names = new HashSet<>(diff.changed());
+        if (diff.addsOrRemovesClasses()) {
+            this.entries.keySet().stream()
+                .filter(name -> name.startsWith(SERVICES))
+                .forEach(names::add);
+        }
+        Path partialInput = Files.createTempFile(output.getParent(), "partial_input", ".jar");
+        Path partialOutput = Files.createTempFile(output.getParent(), "partial_output", ".jar");
+        try {
+            try (ZipFile zipFile = new ZipFile(input);
+                 ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(partialInput)))) {
+                for (String name : names) {
+                    copyEntry(zipFile, zipFile.getEntry(name), zos);
+                }
+            }
+            Files.delete(partialOutput);
+            processor.process(partialInput.toFile(), partialOutput.toFile());
+
+            try (ZipFile previous = new ZipFile(previousOutput.toFile());
+                 ZipFile partial = new ZipFile(partialOutput.toFile());
+                 ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+                Set<String> written = new HashSet<>();
+                Enumeration<? extends ZipEntry> previousEntries = previous.entries();
+                while (previousEntries.hasMoreElements()) {
+                    ZipEntry entry = previousEntries.nextElement();
+                    if (!diff.removed().contains(entry.getName())) {
+                        ZipEntry replacement = partial.getEntry(entry.getName());
+                        if (replacement != null) {
+                            copyEntry(partial, replacement, zos);
+                        }
+                        else {
+                            copyEntry(previous, entry, zos);
+                        }
+                        written.add(entry.getName());
+                    }
+                }
+                List<? extends ZipEntry> added = partial.stream()
+                    .filter(entry -> !written.contains(entry.getName()))
+                    .sorted(Comparator.comparing(ZipEntry::getName))
+                    .toList();
+                for (ZipEntry entry : added) {
+                    copyEntry(partial, entry, zos);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(partialInput);
+            Files.deleteIfExists(partialOutput);
+        }
+    }
+
+    private static void copyEntry(ZipFile zipFile, ZipEntry entry, ZipOutputStream zos) throws IOException {
+        ZipEntry copy = new ZipEntry(entry.getName());
+        copy.setTime(entry.getTime());
+        zos.putNextEntry(copy);
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            is.transferTo(zos);
+        }
+        zos.closeEntry();
+    }
+
+    /**
+     * Move the outdated output of a jar that is about to be transformed again aside, so that it can be reused by an
+     * incremental transformation. Outputs without an entry index can't be reused and are deleted.
+     *
+     * @param output the transformed jar
+     */
+    static void preserveOutdatedOutput(Path output) throws IOException {
+        Path previous = getPreviousOutput(output);
+        if (Files.exists(output) && Files.exists(getIndexPath(output))) {
+            Files.move(output, previous, StandardCopyOption.REPLACE_EXISTING);
+        }
+        else {
+            Files.deleteIfExists(output);
+            // Left behind by an interrupted transformation
+            Files.deleteIfExists(previous);
+        }
+    }
+
+    /**
+     * Delete the output of a jar that is about to be transformed without caching, along with its entry index.
+     * The index would otherwise outlive the output it describes, which can't be matched to its input.
+     *
+     * @param output the transformed jar
+     */
+    static void discardOutput(Path output) throws IOException {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(getIndexPath(output));
+        Files.deleteIfExists(getPreviousOutput(output));
+    }
+
+    static Path getPreviousOutput(Path output) {
+        return output.resolveSibling(output.getFileName() + PREVIOUS_SUFFIX);
+    }
+
+    private static Path getIndexPath(Path output) {
+        return output.resolveSibling(output.getFileName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Transforms all entries of a jar into a new jar.
+     */
+    @FunctionalInterface
+    interface JarProcessor {
+        void process(File input, File output) throws IOException;
+    }
+
+    /**
+     * Changes between two versions of an input jar.
+     *
+     * @param changed added or modified entries
+     * @param added   entries that didn't exist previously, a subset of {@code changed}
+     * @param removed entries that no longer exist
+     */
+    record Diff(Set<String> changed, Set<String> added, Set<String> removed) {
+        /**
+         * {@return whether all changes can be transformed in isolation}
+         * Entries that affect the output of other entries are excluded: mixin classes (accessor renames, adapter
+         * patches and generated mixin classes), mixin configs, refmaps, mod metadata including access wideners
+         * and anything in META-INF.
+         */
+        boolean isIsolated(JarTransformer.FabricModFileMetadata metadata) {
+            String accessWidener = metadata.modMetadata().getAccessWidener();
+            for (Set<String> names : List.of(this.changed, this.removed)) {
+                for (String name : names) {
+                    if (name.startsWith(META_INF) || name.equals(ConnectorUtil.FABRIC_MOD_JSON) || name.equals(accessWidener)
+                        || metadata.mixinConfigs().contains(name) || metadata.refmaps().contains(name)
+                        || name.endsWith(CLASS_EXTENSION) && metadata.mixinPackages().stream().anyMatch(name::startsWith)
+                    ) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * {@return whether the set of classes in the jar changed}
+         * Modified classes don't count, as they exist before and after the change.
+         */
+        boolean addsOrRemovesClasses() {
+            return this.added.stream().anyMatch(name -> name.endsWith(CLASS_EXTENSION)) || this.removed.stream().anyMatch(name -> name.endsWith(CLASS_EXTENSION));
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package dev.su5ed.sinytra.connector.transformer.jar;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.mojang.logging.LogUtils;
 import com.mojang.serialization.JsonOps;
@@ -25,17 +28,18 @@ import dev.su5ed.sinytra.connector.transformer.SrgRemappingReferenceMapper;
 import dev.su5ed.sinytra.connector.transformer.patch.ClassAnalysingTransformer;
 import dev.su5ed.sinytra.connector.transformer.patch.ClassNodeTransformer;
 import dev.su5ed.sinytra.connector.transformer.patch.ConnectorRefmapHolder;
+import dev.su5ed.sinytra.connector.transformer.patch.FusedClassTransformer;
 import net.fabricmc.loader.impl.FabricLoaderImpl;
 import net.fabricmc.loader.impl.MappingResolverImpl;
 import net.minecraftforge.coremod.api.ASMAPI;
 import net.minecraftforge.fart.api.ClassProvider;
 import net.minecraftforge.fart.api.Renamer;
-import net.minecraftforge.fart.api.Transformer;
 import net.minecraftforge.fml.loading.FMLEnvironment;
 import net.minecraftforge.fml.loading.FMLLoader;
 import net.minecraftforge.fml.loading.targets.CommonLaunchHandler;
 import net.minecraftforge.forgespi.locating.IModFile;
 import net.minecraftforge.srgutils.IMappingFile;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import java.io.File;
@@ -46,9 +50,18 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.ZipFile;
 
@@ -60,50 +73,113 @@ public class JarTransformInstance {
     private static final Gson GSON = new Gson();
     private static final Logger LOGGER = LogUtils.getLogger();
 
-    private final SrgRemappingReferenceMapper remapper;
-    private final List<? extends Patch> adapterPatches;
-    private final LVTOffsets lvtOffsetsData;
-    private final BytecodeFixerUpperFrontend bfu;
-    private final Transformer remappingTransformer;
-    private final ClassLookup cleanClassLookup;
-    private final List<Path> libs;
-
-    public JarTransformInstance(ClassProvider classProvider, Iterable<IModFile> loadedMods, List<Path> libs) {
-        MappingResolverImpl resolver = FabricLoaderImpl.INSTANCE.getMappingResolver();
-        resolver.getMap(OBF_NAMESPACE, SOURCE_NAMESPACE);
-        resolver.getMap(SOURCE_NAMESPACE, OBF_NAMESPACE);
-        this.remapper = new SrgRemappingReferenceMapper(resolver.getCurrentMap(SOURCE_NAMESPACE));
-
-        Path patchDataPath = EmbeddedDependencies.getAdapterData(EmbeddedDependencies.ADAPTER_PATCH_DATA);
-        try (Reader reader = Files.newBufferedReader(patchDataPath)) {
-            JsonElement json = GSON.fromJson(reader, JsonElement.class);
-            GlobalReferenceMapper.setReferenceMapper(str -> str == null ? null : str.startsWith("m_") ? ASMAPI.mapMethod(str) : ASMAPI.mapField(str));
-            this.adapterPatches = PatchSerialization.deserialize(json, JsonOps.INSTANCE);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+    private final Supplier<MappingResolverImpl> mappingResolver;
+    private final Supplier<SrgRemappingReferenceMapper> remapper;
+    private final Supplier<Optional<AdapterDataIndex>> adapterPatchIndex;
+    private final Supplier<Optional<AdapterDataIndex>> lvtOffsetsIndex;
+    private final Supplier<List<? extends Patch>> adapterPatches;
+    private final Supplier<LVTOffsets> lvtOffsetsData;
+    // Indexed patch elements, decoded once requested by any jar
+    private final Map<Integer, List<? extends Patch>> indexedPatches = new ConcurrentHashMap<>();
+    private final Supplier<BytecodeFixerUpperFrontend> bfu;
+    private final Supplier<OptimizedRenamingTransformer> remappingTransformer;
+    private final Supplier<ClassLookup> cleanClassLookup;
+    private final LibraryIndex libraryIndex;
+    // Number of threads used to process the entries of a single jar
+    private final int classThreads;
+    private final ExecutorService initExecutor;
+    private volatile boolean bfuInitialized;
 
-        Path offsetDataPath = EmbeddedDependencies.getAdapterData(EmbeddedDependencies.ADAPTER_LVT_OFFSETS);
-        try (Reader reader = Files.newBufferedReader(offsetDataPath)) {
-            JsonElement json = GSON.fromJson(reader, JsonElement.class);
-            this.lvtOffsetsData = LVTOffsets.fromJson(json);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+    /**
+     * @param libraryIndex index of all libraries on the transformation classpath
+     * @param loadedMods   mods located by FML
+     * @param jarThreads   number of jars transformed concurrently
+     */
+    public JarTransformInstance(LibraryIndex libraryIndex, Iterable<IModFile> loadedMods, int jarThreads) {
+        // Components are initialized lazily on first use, as jars that are just copied over don't need any of them
+        this.mappingResolver = Suppliers.memoize(() -> {
+            MappingResolverImpl resolver = FabricLoaderImpl.INSTANCE.getMappingResolver();
+            resolver.getMap(OBF_NAMESPACE, SOURCE_NAMESPACE);
+            resolver.getMap(SOURCE_NAMESPACE, OBF_NAMESPACE);
+            return resolver;
+        });
+        this.remapper = Suppliers.memoize(() -> new SrgRemappingReferenceMapper(this.mappingResolver.get().getCurrentMap(SOURCE_NAMESPACE)));
+        this.adapterPatchIndex = Suppliers.memoize(() -> AdapterDataIndex.load(EmbeddedDependencies.getAdapterData(EmbeddedDependencies.ADAPTER_PATCH_DATA_INDEX)));
+        this.lvtOffsetsIndex = Suppliers.memoize(() -> AdapterDataIndex.load(EmbeddedDependencies.getAdapterData(EmbeddedDependencies.ADAPTER_LVT_OFFSETS_INDEX)));
+        // Fall back to reading the full JSON data when no compiled index is available, e.g. in development environments
+        this.adapterPatches = Suppliers.memoize(() -> deserializePatches(readAdapterData(EmbeddedDependencies.ADAPTER_PATCH_DATA)));
+        this.lvtOffsetsData = Suppliers.memoize(() -> LVTOffsets.fromJson(readAdapterData(EmbeddedDependencies.ADAPTER_LVT_OFFSETS)));
+        this.bfu = Suppliers.memoize(() -> {
+            BytecodeFixerUpperFrontend frontend = new BytecodeFixerUpperFrontend();
+            this.bfuInitialized = true;
+            return frontend;
+        });
+        this.remappingTransformer = Suppliers.memoize(() -> OptimizedRenamingTransformer.create(libraryIndex, s -> {}, this.mappingResolver.get().getCurrentMap(SOURCE_NAMESPACE), IntermediateMapping.get(SOURCE_NAMESPACE)));
+        this.cleanClassLookup = Suppliers.memoize(JarTransformInstance::createCleanClassLookup);
+        this.libraryIndex = libraryIndex;
+        // Split the available cores between concurrently transformed jars rather than giving each jar all of them
+        this.classThreads = Integer.getInteger("connector.transform.classThreads", Math.max(1, Runtime.getRuntime().availableProcessors() / jarThreads));
+        GlobalReferenceMapper.setReferenceMapper(str -> str == null ? null : str.startsWith("m_") ? ASMAPI.mapMethod(str) : ASMAPI.mapField(str));
+        this.initExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("Connector Transformer Init %d").setDaemon(true).build());
+
+        MixinPatchTransformer.completeSetup(loadedMods);
+    }
+
+    public void saveGeneratedAdapterJar() throws IOException {
+        // If no jar has been patched, the existing adapter jar is still valid
+        if (this.bfuInitialized) {
+            this.bfu.get().saveGeneratedAdapterJar();
+            // The adapter jar is loaded as a separate mod file, so it needs its own widening manifest
+            Path path = JarTransformer.getGeneratedJarPath();
+            if (Files.exists(path)) {
+                WideningManifest.writeScannedJarManifest(path, this.libraryIndex);
+            }
+            else {
+                WideningManifest.deleteJarManifest(path);
+            }
         }
+    }
 
-        this.bfu = new BytecodeFixerUpperFrontend();
-        this.remappingTransformer = OptimizedRenamingTransformer.create(classProvider, s -> {}, FabricLoaderImpl.INSTANCE.getMappingResolver().getCurrentMap(SOURCE_NAMESPACE), IntermediateMapping.get(SOURCE_NAMESPACE));
-        this.cleanClassLookup = createCleanClassLookup();
-        this.libs = libs;
+    public void close() {
+        this.initExecutor.shutdown();
+    }
 
-        MixinPatchTransformer.completeSetup(loadedMods);
+    /**
+     * Start initializing components required by a jar in parallel.
+     * They will be awaited once first accessed.
+     */
+    private void prefetchComponents(FabricModFileMetadata metadata) {
+        List<Supplier<?>> components = new ArrayList<>(List.of(this.remappingTransformer));
+        if (!metadata.refmaps().isEmpty()) {
+            components.add(this.remapper);
+        }
+        if (!metadata.mixinPackages().isEmpty()) {
+            components.add(this.bfu);
+            components.add(this.adapterPatchIndex);
+            components.add(this.lvtOffsetsIndex);
+            components.add(this.cleanClassLookup);
+        }
+        for (Supplier<?> component : components) {
+            CompletableFuture.runAsync(component::get, this.initExecutor);
+        }
     }
 
-    public BytecodeFixerUpperFrontend getBfu() {
-        return bfu;
+    /**
+     * Transform a jar, reusing the previous output set aside by {@link JarEntryIndex#preserveOutdatedOutput(Path)}
+     * if possible.
+     *
+     * @param incremental whether to index the input entries, so that the output can be reused incrementally later
+     */
+    public void transformJar(File input, Path output, FabricModFileMetadata metadata, boolean incremental) throws IOException {
+        Path previousOutput = JarEntryIndex.getPreviousOutput(output);
+        try {
+            transformJar(input, output, previousOutput, metadata, incremental);
+        } finally {
+            Files.deleteIfExists(previousOutput);
+        }
     }
 
-    public void transformJar(File input, Path output, FabricModFileMetadata metadata) throws IOException {
+    private void transformJar(File input, Path output, Path previousOutput, FabricModFileMetadata metadata, boolean incremental) throws IOException {
         Stopwatch stopwatch = Stopwatch.createStarted();
 
         if (metadata.generated()) {
@@ -111,46 +187,90 @@ public class JarTransformInstance {
             return;
         }
 
+        JarEntryIndex entryIndex = incremental ? JarEntryIndex.create(input) : null;
+        JarEntryIndex.Diff diff = entryIndex != null ? getIncrementalDiff(entryIndex, output, previousOutput, metadata) : null;
+        if (diff != null && diff.changed().isEmpty() && diff.removed().isEmpty() && WideningManifest.hasJarManifest(output)) {
+            // Only the jar file itself changed, e.g. its timestamps
+            Files.copy(previousOutput, output);
+            entryIndex.write(output);
+            LOGGER.debug(TRANSFORM_MARKER, "Reusing previous output of jar {} as none of its entries changed", input.getName());
+            return;
+        }
+
+        prefetchComponents(metadata);
+
         String jarMapping = metadata.manifestAttributes().getValue(FABRIC_MAPPING_NAMESPACE);
         if (jarMapping != null && !jarMapping.equals(SOURCE_NAMESPACE)) {
             LOGGER.error("Found transformable jar with unsupported mapping {}, currently only {} is supported", jarMapping, SOURCE_NAMESPACE);
         }
 
-        MappingResolverImpl resolver = FabricLoaderImpl.INSTANCE.getMappingResolver();
-        RefmapRemapper.RefmapFiles refmap = RefmapRemapper.processRefmaps(input.toPath(), metadata.refmaps(), this.remapper, this.libs);
+        MappingResolverImpl resolver = this.mappingResolver.get();
+        RefmapRemapper.RefmapFiles refmap = RefmapRemapper.processRefmaps(input.toPath(), metadata.refmaps(), this.remapper, this.libraryIndex);
         IMappingFile srgToIntermediary = resolver.getMap(OBF_NAMESPACE, SOURCE_NAMESPACE);
         IMappingFile intermediaryToSrg = resolver.getCurrentMap(SOURCE_NAMESPACE);
         AccessorRedirectTransformer accessorRedirectTransformer = new AccessorRedirectTransformer(srgToIntermediary);
 
-        List<Patch> extraPatches = Stream.concat(this.adapterPatches.stream(), AccessorRedirectTransformer.PATCHES.stream()).toList();
+        // Mixin targets are collected during analysis, which completes before any patches are requested
+        Supplier<Set<String>> mixinTargets = Suppliers.memoize(() -> accessorRedirectTransformer.getMixinTargets().stream()
+            .map(intermediaryToSrg::remapClass)
+            .collect(Collectors.toSet()));
+        Supplier<List<Patch>> extraPatches = () -> Stream.concat(getAdapterPatches(mixinTargets.get()).stream(), AccessorRedirectTransformer.PATCHES.stream()).toList();
+        Supplier<LVTOffsets> lvtOffsets = Suppliers.memoize(() -> getLVTOffsets(mixinTargets.get()));
         ConnectorRefmapHolder refmapHolder = new ConnectorRefmapHolder(refmap.merged(), refmap.files());
-        PatchEnvironment environment = PatchEnvironment.create(refmapHolder, this.cleanClassLookup, this.bfu.unwrap());
-        MixinPatchTransformer patchTransformer = new MixinPatchTransformer(this.lvtOffsetsData, metadata.mixinPackages(), environment, extraPatches);
+        // Only resolve the clean class lookup once a patch needs it
+        ClassLookup cleanClassLookup = name -> this.cleanClassLookup.get().getClass(name);
+        // Jars without mixins only initialize the bytecode fixer-upper once a class references a retyped field
+        Supplier<PatchEnvironment> environment = Suppliers.memoize(() -> PatchEnvironment.create(refmapHolder, cleanClassLookup, this.bfu.get().unwrap()));
+        MixinPatchTransformer patchTransformer = new MixinPatchTransformer(lvtOffsets, metadata.mixinPackages(), environment, extraPatches);
         RefmapRemapper refmapRemapper = new RefmapRemapper(metadata.visibleMixinConfigs(), refmap.files());
-        Renamer.Builder builder = Renamer.builder()
-            .add(new JarSignatureStripper())
-            .add(new ClassNodeTransformer(
+        WideningManifest.Collector wideningCollector = new WideningManifest.Collector();
+        FusedClassTransformer classTransformer = new FusedClassTransformer(
+            new ClassNodeTransformer(
                 new FieldToMethodTransformer(metadata.modMetadata().getAccessWidener(), srgToIntermediary),
                 accessorRedirectTransformer,
                 new ClassAnalysingTransformer(intermediaryToSrg, IntermediateMapping.get(SOURCE_NAMESPACE))
-            ))
-            .add(this.remappingTransformer)
-            .add(patchTransformer)
-            .add(refmapRemapper)
-            .add(new ModMetadataGenerator(metadata.modMetadata().getId()))
+            ),
+            this.remappingTransformer.get(),
+            patchTransformer,
+            wideningCollector
+        );
+        Renamer.Builder builder = Renamer.builder()
+            .add(new JarSignatureStripper())
+            .add(classTransformer)
+            .threads(this.classThreads)
             .logger(s -> LOGGER.trace(TRANSFORM_MARKER, s))
             .debug(s -> LOGGER.trace(TRANSFORM_MARKER, s));
-        if (!metadata.containsAT()) {
-            builder.add(new AccessWidenerTransformer(metadata.modMetadata().getAccessWidener(), resolver, IntermediateMapping.get(SOURCE_NAMESPACE)));
+        // The outputs of these only depend on unchanged entries and mod metadata, and are present in the previous output
+        if (diff == null) {
+            builder.add(refmapRemapper);
+            builder.add(new ModMetadataGenerator(metadata.modMetadata().getId()));
+            if (!metadata.containsAT()) {
+                builder.add(new AccessWidenerTransformer(metadata.modMetadata().getAccessWidener(), resolver, IntermediateMapping.get(SOURCE_NAMESPACE)));
+            }
         }
         try (Renamer renamer = builder.build()) {
-            accessorRedirectTransformer.analyze(input, metadata.mixinPackages(), environment);
+            if (!metadata.mixinPackages().isEmpty()) {
+                accessorRedirectTransformer.analyze(input, metadata.mixinPackages(), environment.get());
+            }
 
-            renamer.run(input, output.toFile());
+            if (diff != null) {
+                LOGGER.debug(TRANSFORM_MARKER, "Transforming {} changed of {} entries in jar {}", diff.changed().size(), entryIndex.getEntryNames().size(), input.getName());
+                entryIndex.transformChanges(renamer::run, input, previousOutput, output, diff);
+                // Unchanged classes are copied from the previous output without passing through the collector
+                wideningCollector.acceptJar(previousOutput, name -> !diff.changed().contains(name) && !diff.removed().contains(name));
+            }
+            else {
+                renamer.run(input, output.toFile());
+            }
+            LOGGER.debug(TRANSFORM_MARKER, "Passed through {} of {} classes unchanged in jar {}", classTransformer.getPassedThroughCount(), classTransformer.getClassCount(), input.getName());
 
             try (FileSystem zipFile = FileSystems.newFileSystem(output)) {
                 patchTransformer.finalize(zipFile.getPath("/"), metadata.mixinConfigs(), refmap.files(), refmapHolder.getDirtyRefmaps());
             }
+            WideningManifest.writeJarManifest(output, wideningCollector.resolve(this.libraryIndex));
+            if (entryIndex != null) {
+                entryIndex.write(output);
+            }
         } catch (Throwable t) {
             LOGGER.error("Encountered error while transforming jar file " + input.getAbsolutePath(), t);
             throw t;
@@ -160,7 +280,64 @@ public class JarTransformInstance {
         LOGGER.debug(TRANSFORM_MARKER, "Jar {} transformed in {} ms", input.getName(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
     }
 
-    private static void processGeneratedJar(File input, Path output, FabricModFileMetadata metadata, Stopwatch stopwatch) throws IOException {
+    /**
+     * {@return changes to the input since the previous output was produced, or {@code null} if the jar must be fully transformed}
+     */
+    @Nullable
+    private static JarEntryIndex.Diff getIncrementalDiff(JarEntryIndex entryIndex, Path output, Path previousOutput, FabricModFileMetadata metadata) throws IOException {
+        if (Files.notExists(previousOutput)) {
+            return null;
+        }
+        JarEntryIndex previousIndex = JarEntryIndex.read(output);
+        if (previousIndex == null) {
+            return null;
+        }
+        JarEntryIndex.Diff diff = entryIndex.diff(previousIndex);
+        if (!diff.isIsolated(metadata)) {
+            LOGGER.debug(TRANSFORM_MARKER, "Changes to jar {} affect other entries, transforming all entries", output.getFileName());
+            return null;
+        }
+        return diff;
+    }
+
+    private List<? extends Patch> getAdapterPatches(Set<String> targets) {
+        return this.adapterPatchIndex.get()
+            .<List<? extends Patch>>map(index -> {
+                int[] elements = index.selectElements(targets);
+                List<Patch> patches = new ArrayList<>();
+                for (int element : elements) {
+                    patches.addAll(this.indexedPatches.computeIfAbsent(element, i -> {
+                        JsonArray json = new JsonArray(1);
+                        json.add(index.getElement(i));
+                        return deserializePatches(json);
+                    }));
+                }
+                LOGGER.debug(TRANSFORM_MARKER, "Selected {} adapter patch entries for {} mixin targets", elements.length, targets.size());
+                return patches;
+            })
+            .orElseGet(this.adapterPatches);
+    }
+
+    private LVTOffsets getLVTOffsets(Set<String> targets) {
+        return this.lvtOffsetsIndex.get()
+            .map(index -> LVTOffsets.fromJson(index.select(targets)))
+            .orElseGet(this.lvtOffsetsData);
+    }
+
+    private static List<? extends Patch> deserializePatches(JsonElement json) {
+        return PatchSerialization.deserialize(json, JsonOps.INSTANCE);
+    }
+
+    private static JsonElement readAdapterData(String name) {
+        Path path = EmbeddedDependencies.getAdapterData(name);
+        try (Reader reader = Files.newBufferedReader(path)) {
+            return GSON.fromJson(reader, JsonElement.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void processGeneratedJar(File input, Path output, FabricModFileMetadata metadata, Stopwatch stopwatch) throws IOException {
         Files.copy(input.toPath(), output);
         try (FileSystem fs = FileSystems.newFileSystem(output)) {
             Path packMetadata = fs.getPath(ModMetadataGenerator.RESOURCE);
@@ -169,6 +346,8 @@ public class JarTransformInstance {
                 Files.write(packMetadata, data);
             }
         }
+        // Classes of generated jars don't pass through the transformer, so the copy is scanned instead
+        WideningManifest.writeScannedJarManifest(output, this.libraryIndex);
         stopwatch.stop();
         LOGGER.debug(TRANSFORM_MARKER, "Skipping transformation of jar {} after {} ms as it contains generated metadata, assuming it's a java library", input.getName(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
     }
@@ -7,15 +7,18 @@ import com.mojang.datafixers.util.Pair;
 import com.mojang.logging.LogUtils;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 import dev.su5ed.sinytra.connector.ConnectorUtil;
+import dev.su5ed.sinytra.connector.FileHashIndex;
 import dev.su5ed.sinytra.connector.loader.ConnectorEarlyLoader;
 import dev.su5ed.sinytra.connector.loader.ConnectorLoaderModMetadata;
 import dev.su5ed.sinytra.connector.locator.DependencyResolver;
+import dev.su5ed.sinytra.connector.locator.JarSource;
+import dev.su5ed.sinytra.connector.locator.ZipView;
+import dev.su5ed.sinytra.connector.service.ConnectorForkJoinThreadFactory;
 import net.fabricmc.loader.api.FabricLoader;
 import net.fabricmc.loader.api.metadata.CustomValue;
 import net.fabricmc.loader.impl.metadata.LoaderModMetadata;
 import net.fabricmc.loader.impl.metadata.ModMetadataParser;
 import net.fabricmc.loader.impl.metadata.ParseMetadataException;
-import net.minecraftforge.fart.api.ClassProvider;
 import net.minecraftforge.fml.loading.FMLEnvironment;
 import net.minecraftforge.fml.loading.FMLLoader;
 import net.minecraftforge.fml.loading.progress.ProgressMeter;
@@ -27,6 +30,7 @@ import org.slf4j.MarkerFactory;
 import org.spongepowered.asm.launch.MixinLaunchPluginLegacy;
 import org.spongepowered.asm.service.MixinService;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -35,25 +39,27 @@ import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.jar.Attributes;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
 
 import static cpw.mods.modlauncher.api.LamdbaExceptionUtils.uncheck;
 
@@ -66,6 +72,14 @@ public final class JarTransformer {
     private static final Path GENERATED_JAR_PATH = ConnectorUtil.CONNECTOR_FOLDER.resolve("adapter/adapter_generated_mixins.jar");
     private static final String LOOM_GENERATED_PROPERTY = "fabric-loom:generated";
     private static final String LOOM_REMAP_ATTRIBUTE = "Fabric-Loom-Remap";
+    // Maximum number of jars transformed concurrently
+    private static final int TRANSFORM_THREADS = Integer.getInteger("connector.transform.threads", Runtime.getRuntime().availableProcessors());
+    // Time in seconds a single jar is allowed to take to transform
+    private static final long JAR_TRANSFORM_TIMEOUT = Long.getLong("connector.transform.timeout", 60);
+    // Interval in seconds at which we report jars that are still being transformed
+    private static final long PROGRESS_REPORT_INTERVAL = 10;
+    // Seconds to wait for interrupted transformer threads to stop after a timeout
+    private static final long SHUTDOWN_TIMEOUT = 10;
     private static final Logger LOGGER = LogUtils.getLogger();
 
     private static final VarHandle TRANSFORMER_LOADER_FIELD = uncheck(() -> MethodHandles.privateLookupIn(MixinLaunchPluginLegacy.class, MethodHandles.lookup()).findVarHandle(MixinLaunchPluginLegacy.class, "transformerLoader", ILaunchPluginService.ITransformerLoader.class));
@@ -89,7 +103,8 @@ public final class JarTransformer {
         List<Path> inputLibs = new ArrayList<>(libs);
         List<TransformableJar> needTransforming = new ArrayList<>();
         for (TransformableJar jar : jars) {
-            if (jar.cacheFile().isUpToDate()) {
+            // Jars cached before they got a widening manifest are transformed again to produce one
+            if (jar.cacheFile().isUpToDate() && WideningManifest.hasJarManifest(jar.modPath().path())) {
                 transformed.add(jar.modPath());
             }
             else {
@@ -99,56 +114,87 @@ public final class JarTransformer {
         }
 
         if (!needTransforming.isEmpty()) {
+            // Nested jars are read in place during discovery, but the transformer needs them on disk
+            try {
+                for (TransformableJar jar : jars) {
+                    jar.source().extract();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
             List<Path> renamerLibs = Stream.of(FMLLoader.getLaunchHandler().getMinecraftPaths())
                 .flatMap(paths -> Stream.concat(paths.minecraftPaths().stream(), paths.otherArtifacts().stream()))
                 .toList();
             List<Path> allLibs = Stream.concat(inputLibs.stream(), renamerLibs.stream()).toList();
             transformed.addAll(transformJars(needTransforming, allLibs, loadedMods));
         }
+        // Persist input checksums computed during this launch
+        FileHashIndex.get().save();
+        WideningManifest.save(transformed);
 
         return transformed;
     }
 
-    public static TransformableJar cacheTransformableJar(File input) throws IOException {
-        Files.createDirectories(ConnectorUtil.CONNECTOR_FOLDER);
+    /**
+     * {@return the path of the transformed jar produced from an input jar}
+     */
+    public static Path getOutputPath(File input) {
         String name = input.getName().split("\\.(?!.*\\.)")[0];
-        Path output = ConnectorUtil.CONNECTOR_FOLDER.resolve(name + MAPPED_SUFFIX + ".jar");
+        return ConnectorUtil.CONNECTOR_FOLDER.resolve(name + MAPPED_SUFFIX + ".jar");
+    }
+
+    public static TransformableJar cacheTransformableJar(JarSource source, FabricModFileMetadata metadata) throws IOException {
+        Files.createDirectories(ConnectorUtil.CONNECTOR_FOLDER);
+        File input = source.getInputFile().toFile();
+        Path output = getOutputPath(input);
 
-        FabricModFileMetadata metadata = readModMetadata(input);
         FabricModPath path = new FabricModPath(output, metadata);
-        ConnectorUtil.CacheFile cacheFile = ConnectorUtil.getCached(input.toPath(), output);
-        return new TransformableJar(input, path, cacheFile);
+        String cacheKey = source.getCacheKey();
+        // Outdated outputs are kept until the jar is transformed again, which may reuse them
+        ConnectorUtil.CacheFile cacheFile = ConnectorUtil.getCachedByKey(cacheKey, output, false);
+        return new TransformableJar(input, source, path, cacheFile);
     }
 
     private static List<FabricModPath> transformJars(List<TransformableJar> paths, List<Path> libs, Iterable<IModFile> loadedMods) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         ProgressMeter progress = StartupNotificationManager.addProgressBar("[Connector] Transforming Jars", paths.size());
+        int jarThreads = Math.max(1, Math.min(TRANSFORM_THREADS, paths.size()));
+        LibraryIndex libraryIndex = null;
+        JarTransformInstance transformInstance = null;
         try {
             ProgressMeter initProgress = StartupNotificationManager.addProgressBar("[Connector] Initializing Transformer", 0);
-            JarTransformInstance transformInstance;
             try {
-                ClassProvider classProvider = ClassProvider.fromPaths(libs.toArray(Path[]::new));
-                ILaunchPluginService.ITransformerLoader loader = name -> classProvider.getClassBytes(name.replace('.', '/')).orElseThrow(() -> new ClassNotFoundException(name));
+                // Resolve classes and resources of all libraries through a single index, shared by all stages
+                libraryIndex = new LibraryIndex(libs);
+                LibraryIndex index = libraryIndex;
+                ILaunchPluginService.ITransformerLoader loader = name -> index.getClassBytes(name.replace('.', '/')).orElseThrow(() -> new ClassNotFoundException(name));
                 setMixinClassProvider(loader);
-                transformInstance = new JarTransformInstance(classProvider, loadedMods, libs);
+                transformInstance = new JarTransformInstance(libraryIndex, loadedMods, jarThreads);
             } finally {
                 initProgress.complete();
             }
-            ExecutorService executorService = Executors.newFixedThreadPool(paths.size());
-            List<Pair<File, Future<FabricModPath>>> futures = paths.stream()
+            // Start with the largest jars so that they don't end up holding up completion at the very end
+            List<TransformableJar> ordered = sortByEntryCount(paths, libraryIndex);
+            Map<File, Long> running = new ConcurrentHashMap<>();
+            ExecutorService executorService = new ForkJoinPool(jarThreads, new ConnectorForkJoinThreadFactory(), null, true);
+            JarTransformInstance instance = transformInstance;
+            List<Pair<File, Future<FabricModPath>>> futures = ordered.stream()
                 .map(jar -> {
                     Future<FabricModPath> future = executorService.submit(() -> {
-                        FabricModPath path = jar.transform(transformInstance);
-                        progress.increment();
-                        return path;
+                        running.put(jar.input(), System.nanoTime());
+                        try {
+                            FabricModPath path = jar.transform(instance);
+                            progress.increment();
+                            return path;
+                        } finally {
+                            running.remove(jar.input());
+                        }
                     });
                     return Pair.of(jar.input(), future);
                 })
                 .toList();
             executorService.shutdown();
-            if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
-                throw new RuntimeException("Timed out waiting for jar remap");
-            }
+            awaitTransformCompletion(executorService, running);
             List<FabricModPath> results = futures.stream()
                 .map(pair -> {
                     try {
@@ -159,52 +205,100 @@ public final class JarTransformer {
                 })
                 .filter(Objects::nonNull)
                 .toList();
-            uncheck(() -> transformInstance.getBfu().saveGeneratedAdapterJar());
+            uncheck(() -> instance.saveGeneratedAdapterJar());
+            ClassInfoCache.get().logStatistics();
             stopwatch.stop();
             LOGGER.debug(TRANSFORM_MARKER, "Processed all jars in {} ms", stopwatch.elapsed(TimeUnit.MILLISECONDS));
             return results;
         } catch (InterruptedException ignored) {
             return List.of();
         } finally {
+            if (transformInstance != null) {
+                transformInstance.close();
+            }
             setMixinClassProvider(null);
+            if (libraryIndex != null) {
+                try {
+                    libraryIndex.close();
+                } catch (IOException e) {
+                    LOGGER.error(TRANSFORM_MARKER, "Error closing library index", e);
+                }
+            }
+            // Entries hold on to the class providers of the transform instance, which are no longer used
+            ClassInfoCache.get().invalidateAll();
             progress.complete();
         }
     }
 
-    private static FabricModFileMetadata readModMetadata(File input) throws IOException {
-        try (JarFile jarFile = new JarFile(input)) {
-            ConnectorLoaderModMetadata metadata;
-            Set<String> configs;
-            try (InputStream ins = jarFile.getInputStream(jarFile.getEntry(ConnectorUtil.FABRIC_MOD_JSON))) {
-                LoaderModMetadata rawMetadata = ModMetadataParser.parseMetadata(ins, "", Collections.emptyList(), DependencyResolver.VERSION_OVERRIDES, DependencyResolver.DEPENDENCY_OVERRIDES, false);
-                metadata = new ConnectorLoaderModMetadata(rawMetadata);
-
-                configs = new HashSet<>(metadata.getMixinConfigs(FabricLoader.getInstance().getEnvironmentType()));
-            } catch (ParseMetadataException e) {
-                throw new RuntimeException(e);
-            }
-            boolean containsAT = jarFile.getEntry(ConnectorUtil.AT_PATH) != null;
-
-            Set<String> refmaps = new HashSet<>();
-            Set<String> mixinPackages = new HashSet<>();
-            for (String configName : configs) {
-                ZipEntry entry = jarFile.getEntry(configName);
-                if (entry != null) {
-                    readMixinConfigPackages(input, jarFile, entry, refmaps, mixinPackages);
+    private static List<TransformableJar> sortByEntryCount(List<TransformableJar> jars, LibraryIndex libraryIndex) {
+        return jars.stream()
+            .map(jar -> Pair.of(jar, libraryIndex.getEntryCount(jar.input().toPath())))
+            .sorted(Comparator.comparing(Pair::getSecond, Comparator.reverseOrder()))
+            .map(Pair::getFirst)
+            .toList();
+    }
+
+    private static void awaitTransformCompletion(ExecutorService executorService, Map<File, Long> running) throws InterruptedException {
+        while (!executorService.awaitTermination(PROGRESS_REPORT_INTERVAL, TimeUnit.SECONDS)) {
+            long now = System.nanoTime();
+            for (Map.Entry<File, Long> entry : running.entrySet()) {
+                long elapsed = TimeUnit.NANOSECONDS.toSeconds(now - entry.getValue());
+                if (elapsed >= JAR_TRANSFORM_TIMEOUT) {
+                    executorService.shutdownNow();
+                    // Shared resources such as the library index are closed afterwards, so give workers a chance to stop using them
+                    if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                        LOGGER.error(TRANSFORM_MARKER, "Transformer threads did not terminate within {} seconds after being interrupted", SHUTDOWN_TIMEOUT);
+                    }
+                    TimeoutException exception = new TimeoutException("Transformation did not complete after " + elapsed + " seconds");
+                    throw ConnectorEarlyLoader.createGenericLoadingException(exception, "Timed out transforming jar " + entry.getKey().getName());
                 }
             }
-            Set<String> visibleConfigs = Set.copyOf(configs);
-            // Find additional configs that may not be listed in mod metadata
-            jarFile.stream()
-                .forEach(entry -> {
-                    String name = entry.getName();
-                    if ((name.endsWith(".mixins.json") || name.startsWith("mixins.") && name.endsWith(".json")) && configs.add(name)) {
-                        readMixinConfigPackages(input, jarFile, entry, refmaps, mixinPackages);
-                    }
-                });
-            Attributes manifestAttributes = Optional.ofNullable(jarFile.getManifest()).map(Manifest::getMainAttributes).orElseGet(Attributes::new);
-            boolean generated = isGeneratedLibraryJarMetadata(manifestAttributes, metadata);
-            return new FabricModFileMetadata(metadata, visibleConfigs, configs, refmaps, mixinPackages, manifestAttributes, containsAT, generated);
+            if (!running.isEmpty()) {
+                LOGGER.info(TRANSFORM_MARKER, "Waiting for {} jar(s) to finish transforming: {}", running.size(), running.keySet().stream().map(File::getName).collect(Collectors.joining(", ")));
+            }
+        }
+    }
+
+    /**
+     * Read fabric mod metadata from an open archive.
+     *
+     * @param input              the archive location, used for error reporting
+     * @param zipView            the open archive
+     * @param entryNames         names of all entries in the archive
+     * @param manifestAttributes main attributes of the archive's manifest
+     * @param packages           java packages contained in the archive
+     * @param modJson            contents of the archive's fabric.mod.json file
+     */
+    public static FabricModFileMetadata readModMetadata(JarSource input, ZipView zipView, Collection<String> entryNames, Attributes manifestAttributes, Set<String> packages, String modJson) throws IOException {
+        ConnectorLoaderModMetadata metadata = parseModMetadata(modJson);
+        Set<String> configs = new HashSet<>(metadata.getMixinConfigs(FabricLoader.getInstance().getEnvironmentType()));
+        boolean containsAT = zipView.getEntry(ConnectorUtil.AT_PATH) != null;
+
+        Set<String> refmaps = new HashSet<>();
+        Set<String> mixinPackages = new HashSet<>();
+        for (String configName : configs) {
+            ZipView.Entry entry = zipView.getEntry(configName);
+            if (entry != null) {
+                readMixinConfigPackages(input, zipView, entry, refmaps, mixinPackages);
+            }
+        }
+        Set<String> visibleConfigs = Set.copyOf(configs);
+        // Find additional configs that may not be listed in mod metadata
+        for (String name : entryNames) {
+            if ((name.endsWith(".mixins.json") || name.startsWith("mixins.") && name.endsWith(".json")) && configs.add(name)) {
+                readMixinConfigPackages(input, zipView, zipView.getEntry(name), refmaps, mixinPackages);
+            }
+        }
+        boolean generated = isGeneratedLibraryJarMetadata(manifestAttributes, metadata);
+        return new FabricModFileMetadata(metadata, visibleConfigs, configs, refmaps, mixinPackages, manifestAttributes, Set.copyOf(packages), containsAT, generated);
+    }
+
+    public static ConnectorLoaderModMetadata parseModMetadata(String modJson) throws IOException {
+        try (InputStream ins = new ByteArrayInputStream(modJson.getBytes(StandardCharsets.UTF_8))) {
+            LoaderModMetadata rawMetadata = ModMetadataParser.parseMetadata(ins, "", Collections.emptyList(), DependencyResolver.VERSION_OVERRIDES, DependencyResolver.DEPENDENCY_OVERRIDES, false);
+            return new ConnectorLoaderModMetadata(rawMetadata);
+        } catch (ParseMetadataException e) {
+            throw new RuntimeException(e);
         }
     }
 
@@ -217,8 +311,8 @@ public final class JarTransformer {
         return false;
     }
 
-    private static void readMixinConfigPackages(File input, JarFile jarFile, ZipEntry entry, Set<String> refmaps, Set<String> packages) {
-        try (Reader reader = new InputStreamReader(jarFile.getInputStream(entry))) {
+    private static void readMixinConfigPackages(JarSource input, ZipView zipView, ZipView.Entry entry, Set<String> refmaps, Set<String> packages) {
+        try (Reader reader = new InputStreamReader(zipView.getInputStream(entry))) {
             JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
             if (json.has("refmap")) {
                 String refmap = json.get("refmap").getAsString();
@@ -232,7 +326,7 @@ public final class JarTransformer {
                 }
             }
         } catch (IOException e) {
-            LOGGER.error("Error reading mixin config entry {} in file {}", entry.getName(), input.getAbsolutePath());
+            LOGGER.error("Error reading mixin config entry {} in file {}", entry.name(), input);
             throw new UncheckedIOException(e);
         }
     }
@@ -241,12 +335,19 @@ public final class JarTransformer {
 
     public record FabricModPath(Path path, FabricModFileMetadata metadata) {}
 
-    public record FabricModFileMetadata(ConnectorLoaderModMetadata modMetadata, Collection<String> visibleMixinConfigs, Collection<String> mixinConfigs, Set<String> refmaps, Set<String> mixinPackages, Attributes manifestAttributes, boolean containsAT, boolean generated) {}
+    public record FabricModFileMetadata(ConnectorLoaderModMetadata modMetadata, Collection<String> visibleMixinConfigs, Collection<String> mixinConfigs, Set<String> refmaps, Set<String> mixinPackages, Attributes manifestAttributes, Set<String> packages, boolean containsAT, boolean generated) {}
 
-    public record TransformableJar(File input, FabricModPath modPath, ConnectorUtil.CacheFile cacheFile) {
+    public record TransformableJar(File input, JarSource source, FabricModPath modPath, ConnectorUtil.CacheFile cacheFile) {
         public FabricModPath transform(JarTransformInstance transformInstance) throws IOException {
-            Files.deleteIfExists(this.modPath.path);
-            transformInstance.transformJar(this.input, this.modPath.path, this.modPath.metadata());
+            // Outputs can only be reused incrementally while caching is enabled
+            boolean incremental = this.cacheFile.isEnabled();
+            if (incremental) {
+                JarEntryIndex.preserveOutdatedOutput(this.modPath.path);
+            }
+            else {
+                JarEntryIndex.discardOutput(this.modPath.path);
+            }
+            transformInstance.transformJar(this.input, this.modPath.path, this.modPath.metadata(), incremental);
             this.cacheFile.save();
             return this.modPath;
         }
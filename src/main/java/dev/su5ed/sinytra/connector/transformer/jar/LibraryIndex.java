@@ -0,0 +1,174 @@
+package dev.su5ed.sinytra.connector.transformer.jar;
+
+import com.google.common.base.Stopwatch;
+import com.mojang.logging.LogUtils;
+import net.minecraftforge.fart.api.ClassProvider;
+import net.minecraftforge.fart.internal.ClassProviderImpl;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static dev.su5ed.sinytra.connector.transformer.jar.JarTransformer.TRANSFORM_MARKER;
+
+/**
+ * An index of all classes and resources found in the renamer libraries, shared by all jar transforms.
+ * Libraries are indexed once in parallel, archives from their central directory only. Where multiple libraries contain
+ * the same entry, the first one in classpath order wins. Archives stay open until the index is closed
+ * after all jars have been transformed, so that entries can be read without reopening them.
+ */
+public final class LibraryIndex implements ClassProvider {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String CLASS_EXTENSION = ".class";
+
+    private final List<Path> libs;
+    // Open archives by library index, null for directories
+    private final ZipFile[] archives;
+    // Library path -> number of entries
+    private final Map<Path, Integer> entryCounts = new ConcurrentHashMap<>();
+    // Entry name -> index of the library providing it
+    private final Map<String, Integer> entries;
+
+    public LibraryIndex(List<Path> libs) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        this.libs = List.copyOf(libs);
+        this.archives = new ZipFile[this.libs.size()];
+        List<List<String>> names = IntStream.range(0, this.libs.size())
+            .parallel()
+            .mapToObj(this::indexLibrary)
+            .toList();
+        // Merge sequentially to keep classpath order
+        Map<String, Integer> entries = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            for (String name : names.get(i)) {
+                entries.putIfAbsent(name, i);
+            }
+        }
+        this.entries = Collections.unmodifiableMap(entries);
+        stopwatch.stop();
+        LOGGER.debug(TRANSFORM_MARKER, "Indexed {} entries of {} libraries in {} ms", this.entries.size(), this.libs.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * {@return the number of entries in a library, or {@code 0} if it is not part of the index}
+     */
+    public int getEntryCount(Path lib) {
+        return this.entryCounts.getOrDefault(lib, 0);
+    }
+
+    /**
+     * Read a resource from the first library containing it.
+     *
+     * @param name   the resource name
+     * @param reader function reading the resource contents
+     * @return the result of the reader, or {@code null} if the resource was not found
+     */
+    @Nullable
+    public <T> T readResource(String name, ResourceReader<T> reader) throws IOException {
+        Integer index = this.entries.get(name);
+        if (index == null) {
+            return null;
+        }
+        ZipFile zipFile = this.archives[index];
+        if (zipFile != null) {
+            ZipEntry entry = zipFile.getEntry(name);
+            if (entry != null) {
+                try (InputStream is = zipFile.getInputStream(entry)) {
+                    return reader.read(is);
+                }
+            }
+            return null;
+        }
+        try (InputStream is = Files.newInputStream(this.libs.get(index).resolve(name))) {
+            return reader.read(is);
+        }
+    }
+
+    @Override
+    public Optional<? extends IClassInfo> getClass(String cls) {
+        return ClassInfoCache.get().get(this, cls, s -> getClassBytes(s)
+            .map(data -> new ClassInfoCache.Weighted<IClassInfo>(new ClassProviderImpl.ClassInfo(data), data.length)));
+    }
+
+    @Override
+    public Optional<byte[]> getClassBytes(String cls) {
+        try {
+            return Optional.ofNullable(readResource(cls + CLASS_EXTENSION, InputStream::readAllBytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (ZipFile zipFile : this.archives) {
+            if (zipFile != null) {
+                try {
+                    zipFile.close();
+                } catch (IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    }
+                    else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        ClassInfoCache.get().invalidate(this);
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private List<String> indexLibrary(int index) {
+        Path lib = this.libs.get(index);
+        List<String> names = new ArrayList<>();
+        try {
+            if (Files.isDirectory(lib)) {
+                try (Stream<Path> stream = Files.walk(lib)) {
+                    stream
+                        .filter(Files::isRegularFile)
+                        .forEach(path -> names.add(lib.relativize(path).toString().replace('\\', '/')));
+                }
+            }
+            else {
+                ZipFile zipFile = new ZipFile(lib.toFile());
+                this.archives[index] = zipFile;
+                for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory()) {
+                        names.add(entry.getName());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error indexing library {}", lib, e);
+        }
+        this.entryCounts.put(lib, names.size());
+        return names;
+    }
+
+    @FunctionalInterface
+    public interface ResourceReader<T> {
+        T read(InputStream is) throws IOException;
+    }
+}
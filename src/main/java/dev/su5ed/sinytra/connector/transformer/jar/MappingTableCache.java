@@ -0,0 +1,320 @@
+package dev.su5ed.sinytra.connector.transformer.jar;
+
+import com.mojang.logging.LogUtils;
+import dev.su5ed.sinytra.connector.ConnectorUtil;
+import dev.su5ed.sinytra.connector.locator.EmbeddedDependencies;
+import net.minecraftforge.fml.loading.FMLLoader;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static dev.su5ed.sinytra.connector.transformer.jar.JarTransformer.TRANSFORM_MARKER;
+
+/**
+ * Persists mapping tables derived from the mapping resolver across launches.
+ * Tables are stored as flat arrays of offsets into a string pool, which are memory-mapped
+ * when loaded and only decode the strings that are actually looked up.
+ * Files are invalidated whenever the Connector, Minecraft or Forge version changes.
+ */
+public final class MappingTableCache {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final Path CACHE_FOLDER = ConnectorUtil.CONNECTOR_FOLDER.resolve("mappings");
+    private static final int MAGIC = 0x434E4D54; // CNMT
+    private static final int FORMAT_VERSION = 1;
+    private static final int EMPTY = -1;
+
+    /**
+     * Load a cached table file, or compute and store it if it's missing or outdated.
+     *
+     * @param name       the file name of the table
+     * @param reader     reads the table from serialized data
+     * @param serializer computes the serialized table data
+     * @return the table
+     */
+    public static <T> T getOrCreate(String name, Function<ByteBuffer, T> reader, Supplier<byte[]> serializer) {
+        Path path = CACHE_FOLDER.resolve(name + ".bin");
+        String key = getCacheKey();
+        Optional<ByteBuffer> cached = open(path, key);
+        if (cached.isPresent()) {
+            try {
+                return reader.apply(cached.get());
+            } catch (RuntimeException e) {
+                LOGGER.error(TRANSFORM_MARKER, "Error reading cached mapping table {}, recomputing", path, e);
+            }
+        }
+        byte[] data = serializer.get();
+        write(path, key, data);
+        return reader.apply(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Load cached string tables, or compute and store them if they're missing or outdated.
+     *
+     * @param name   the file name of the tables
+     * @param tables computes the contents of each table
+     * @return the tables in the order they were provided
+     */
+    public static List<StringTable> getOrCreateStringTables(String name, Supplier<List<Map<String, String>>> tables) {
+        return getOrCreate(name, buffer -> {
+            StringPool pool = StringPool.read(buffer);
+            int count = buffer.getInt();
+            List<StringTable> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(StringTable.read(buffer, pool));
+            }
+            return list;
+        }, () -> {
+            try {
+                StringPool.Builder pool = new StringPool.Builder();
+                ByteArrayOutputStream tableData = new ByteArrayOutputStream();
+                DataOutputStream tableOut = new DataOutputStream(tableData);
+                List<Map<String, String>> maps = tables.get();
+                tableOut.writeInt(maps.size());
+                for (Map<String, String> map : maps) {
+                    StringTable.write(map, pool, tableOut);
+                }
+                tableOut.flush();
+
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(data);
+                pool.write(out);
+                tableData.writeTo(out);
+                out.flush();
+                return data.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static String getCacheKey() {
+        return EmbeddedDependencies.getJarCacheVersion() + "," + FMLLoader.versionInfo().mcAndForgeVersion();
+    }
+
+    private static Optional<ByteBuffer> open(Path path, String key) {
+        if (Files.notExists(path)) {
+            return Optional.empty();
+        }
+        // Read the header without mapping the file, so that we don't keep it locked when it's outdated
+        int headerLength;
+        try (InputStream is = Files.newInputStream(path); DataInputStream dis = new DataInputStream(is)) {
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            byte[] keyBytes = new byte[dis.readInt()];
+            dis.readFully(keyBytes);
+            if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+                LOGGER.debug(TRANSFORM_MARKER, "Ignoring outdated mapping table {}", path);
+                return Optional.empty();
+            }
+            headerLength = 12 + keyBytes.length;
+        } catch (IOException e) {
+            LOGGER.error(TRANSFORM_MARKER, "Error reading mapping table header {}", path, e);
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return Optional.of(channel.map(FileChannel.MapMode.READ_ONLY, headerLength, channel.size() - headerLength));
+        } catch (IOException e) {
+            LOGGER.error(TRANSFORM_MARKER, "Error mapping table file {}", path, e);
+            return Optional.empty();
+        }
+    }
+
+    private static void write(Path path, String key, byte[] data) {
+        try {
+            Files.createDirectories(path.getParent());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.write(data);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.error(TRANSFORM_MARKER, "Error writing mapping table {}", path, e);
+        }
+    }
+
+    static long[] readLongs(ByteBuffer buffer) {
+        long[] array = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(array);
+        buffer.position(buffer.position() + array.length * Long.BYTES);
+        return array;
+    }
+
+    static int[] readInts(ByteBuffer buffer) {
+        int[] array = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + array.length * Integer.BYTES);
+        return array;
+    }
+
+    static void writeLongs(DataOutputStream out, long[] array) throws IOException {
+        out.writeInt(array.length);
+        for (long value : array) {
+            out.writeLong(value);
+        }
+    }
+
+    static void writeInts(DataOutputStream out, int[] array) throws IOException {
+        out.writeInt(array.length);
+        for (int value : array) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Deduplicated UTF-8 encoded strings, addressed by their offset in the pool.
+     * Strings are decoded on demand.
+     */
+    public static final class StringPool {
+        private final ByteBuffer data;
+
+        private StringPool(ByteBuffer data) {
+            this.data = data;
+        }
+
+        static StringPool read(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            ByteBuffer data = buffer.slice(buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            return new StringPool(data);
+        }
+
+        String get(int offset) {
+            int length = this.data.getInt(offset);
+            byte[] bytes = new byte[length];
+            this.data.get(offset + Integer.BYTES, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        static final class Builder {
+            private final Map<String, Integer> offsets = new HashMap<>();
+            private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+            int add(String str) {
+                return this.offsets.computeIfAbsent(str, s -> {
+                    int offset = this.data.size();
+                    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                    this.data.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+                    this.data.writeBytes(bytes);
+                    return offset;
+                });
+            }
+
+            void write(DataOutputStream out) throws IOException {
+                out.writeInt(this.data.size());
+                this.data.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * An immutable open addressing string to string hash table backed by a {@link StringPool}.
+     * Decoded keys and values are cached once looked up.
+     */
+    public static final class StringTable {
+        private final StringPool pool;
+        private final int[] hashes;
+        private final int[] keyOffsets;
+        private final int[] valueOffsets;
+        private final String[] keys;
+        private final String[] values;
+        private final int mask;
+
+        private StringTable(StringPool pool, int[] hashes, int[] keyOffsets, int[] valueOffsets) {
+            this.pool = pool;
+            this.hashes = hashes;
+            this.keyOffsets = keyOffsets;
+            this.valueOffsets = valueOffsets;
+            this.keys = new String[hashes.length];
+            this.values = new String[hashes.length];
+            this.mask = hashes.length - 1;
+        }
+
+        static StringTable read(ByteBuffer buffer, StringPool pool) {
+            int[] hashes = readInts(buffer);
+            int[] keyOffsets = readInts(buffer);
+            int[] valueOffsets = readInts(buffer);
+            return new StringTable(pool, hashes, keyOffsets, valueOffsets);
+        }
+
+        static void write(Map<String, String> map, StringPool.Builder pool, DataOutputStream out) throws IOException {
+            int size = Integer.highestOneBit(Math.max(map.size(), 4) * 2 - 1) << 1;
+            int mask = size - 1;
+            int[] hashes = new int[size];
+            int[] keyOffsets = new int[size];
+            int[] valueOffsets = new int[size];
+            Arrays.fill(keyOffsets, EMPTY);
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                int hash = entry.getKey().hashCode();
+                int i = mix(hash) & mask;
+                while (keyOffsets[i] != EMPTY) {
+                    i = i + 1 & mask;
+                }
+                hashes[i] = hash;
+                keyOffsets[i] = pool.add(entry.getKey());
+                valueOffsets[i] = pool.add(entry.getValue());
+            }
+            writeInts(out, hashes);
+            writeInts(out, keyOffsets);
+            writeInts(out, valueOffsets);
+        }
+
+        @Nullable
+        public String get(String key) {
+            int hash = key.hashCode();
+            int i = mix(hash) & this.mask;
+            while (this.keyOffsets[i] != EMPTY) {
+                if (this.hashes[i] == hash && key.equals(getKey(i))) {
+                    String value = this.values[i];
+                    if (value == null) {
+                        value = this.values[i] = this.pool.get(this.valueOffsets[i]);
+                    }
+                    return value;
+                }
+                i = i + 1 & this.mask;
+            }
+            return null;
+        }
+
+        private String getKey(int slot) {
+            String key = this.keys[slot];
+            if (key == null) {
+                key = this.keys[slot] = this.pool.get(this.keyOffsets[slot]);
+            }
+            return key;
+        }
+
+        private static int mix(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ h >>> 16;
+        }
+    }
+
+    private MappingTableCache() {}
+}
@@ -9,16 +9,18 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.tree.ClassNode;
 
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Provides class trees remapped from an upstream class provider. Trees are stored in the shared {@link ClassInfoCache}.
+ */
 public class RenamingClassLookup implements ClassLookup {
+    // Class trees including code take up several times the size of their class file
+    private static final int FULL_NODE_WEIGHT_FACTOR = 4;
+
     private final ClassProvider upstream;
     private final EnhancedRemapper remapper;
 
-    private final Map<String, Optional<ClassNode>> classCache = new ConcurrentHashMap<>();
-
     public RenamingClassLookup(ClassProvider upstream, IMappingFile mapping) {
         this.upstream = upstream;
         this.remapper = new EnhancedRemapper(this.upstream, mapping, s -> {});
@@ -26,13 +28,13 @@ public class RenamingClassLookup implements ClassLookup {
 
     @Override
     public Optional<ClassNode> getClass(String name) {
-        return this.classCache.computeIfAbsent(name, s -> this.upstream.getClassBytes(name)
+        return ClassInfoCache.get().get(this, name, s -> this.upstream.getClassBytes(s)
             .map(data -> {
                 ClassReader reader = new ClassReader(data);
                 ClassNode node = new ClassNode();
                 ClassRemapper remapper = new EnhancedClassRemapper(node, this.remapper, null);
                 reader.accept(remapper, 0);
-                return node;
+                return new ClassInfoCache.Weighted<>(node, data.length * FULL_NODE_WEIGHT_FACTOR);
             }));
     }
 }
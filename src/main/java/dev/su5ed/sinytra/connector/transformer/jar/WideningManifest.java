@@ -0,0 +1,250 @@
+package dev.su5ed.sinytra.connector.transformer.jar;
+
+import com.mojang.logging.LogUtils;
+import dev.su5ed.sinytra.connector.ConnectorUtil;
+import dev.su5ed.sinytra.connector.transformer.patch.ConstantPoolScanner;
+import net.minecraftforge.fart.api.ClassProvider;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static dev.su5ed.sinytra.connector.transformer.jar.JarTransformer.TRANSFORM_MARKER;
+
+/**
+ * Lists Minecraft classes whose members need to be widened to public at runtime, because transformed fabric mods
+ * reference or extend them. Due to package differences between yarn/intermediary/mojmap, members that are accessible
+ * to mods at compile time may end up in a different package at runtime.
+ * <p>
+ * Each transformed jar gets its own manifest stored next to it, which is reused while the jar is cached.
+ * The manifests of all jars and the generated adapter jar are merged into a single file read by the launch plugin.
+ * Classes are stored as internal names, one per line.
+ * <p>
+ * Whole classes are listed rather than individual members, as launch plugins select the classes they process and
+ * the plugin widens every member of a selected class, just like it did for all classes before. Listing referenced
+ * members alone would not be enough either: a reference may resolve to a member inherited from a super type, and
+ * methods overridden by mod classes are never referenced by name at all.
+ */
+public final class WideningManifest {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String HEADER = "# Connector widening manifest v1";
+    private static final String JAR_MANIFEST_SUFFIX = ".widen";
+    private static final String MINECRAFT_PREFIX = "net/minecraft/";
+    private static final Path MANIFEST_PATH = ConnectorUtil.CONNECTOR_FOLDER.resolve("widening_manifest.txt");
+
+    /**
+     * Write the merged manifest of all jars, including the generated adapter jar if it exists. If any jar is missing
+     * its manifest, the merged manifest is removed instead, so that all Minecraft classes are widened.
+     *
+     * @param jars all transformed jars, including cached ones
+     */
+    public static void save(Collection<JarTransformer.FabricModPath> jars) {
+        try {
+            List<Path> paths = new ArrayList<>();
+            jars.forEach(jar -> paths.add(jar.path()));
+            Path generatedJar = JarTransformer.getGeneratedJarPath();
+            if (Files.exists(generatedJar)) {
+                paths.add(generatedJar);
+            }
+            Set<String> classes = new TreeSet<>();
+            for (Path path : paths) {
+                Set<String> jarClasses = read(getJarManifestPath(path));
+                if (jarClasses == null) {
+                    LOGGER.warn(TRANSFORM_MARKER, "Missing widening manifest for jar {}, falling back to widening all classes", path);
+                    Files.deleteIfExists(MANIFEST_PATH);
+                    return;
+                }
+                classes.addAll(jarClasses);
+            }
+            write(MANIFEST_PATH, classes);
+            LOGGER.debug(TRANSFORM_MARKER, "Saved widening manifest of {} classes", classes.size());
+        } catch (IOException e) {
+            LOGGER.error(TRANSFORM_MARKER, "Error writing widening manifest", e);
+            try {
+                Files.deleteIfExists(MANIFEST_PATH);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * {@return the merged manifest, or {@code null} if it is not available and all classes should be widened}
+     */
+    @Nullable
+    public static Set<String> load() {
+        try {
+            return read(MANIFEST_PATH);
+        } catch (IOException e) {
+            LOGGER.error("Error reading widening manifest", e);
+            return null;
+        }
+    }
+
+    static void writeJarManifest(Path output, Collection<String> classes) throws IOException {
+        write(getJarManifestPath(output), new TreeSet<>(classes));
+    }
+
+    /**
+     * Scan all classes of a jar and write its manifest.
+     *
+     * @param jar           the jar to scan
+     * @param classProvider provider of runtime-named Minecraft classes
+     */
+    static void writeScannedJarManifest(Path jar, ClassProvider classProvider) throws IOException {
+        Collector collector = new Collector();
+        collector.acceptJar(jar);
+        writeJarManifest(jar, collector.resolve(classProvider));
+    }
+
+    static void deleteJarManifest(Path output) throws IOException {
+        Files.deleteIfExists(getJarManifestPath(output));
+    }
+
+    /**
+     * {@return whether a jar has a manifest}
+     */
+    public static boolean hasJarManifest(Path output) {
+        return Files.exists(getJarManifestPath(output));
+    }
+
+    private static Path getJarManifestPath(Path output) {
+        return output.resolveSibling(output.getFileName() + JAR_MANIFEST_SUFFIX);
+    }
+
+    @Nullable
+    private static Set<String> read(Path path) throws IOException {
+        if (Files.notExists(path)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return null;
+            }
+            Set<String> classes = new HashSet<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    classes.add(line);
+                }
+            }
+            return classes;
+        }
+    }
+
+    private static void write(Path path, Set<String> classes) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (String cls : classes) {
+                writer.write(cls);
+                writer.newLine();
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Collects Minecraft classes referenced by the final bytes of classes in a single jar.
+     * Safe to use from multiple threads.
+     */
+    public static final class Collector {
+        private final Set<String> classes = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Record the owners of all members referenced by a class, along with its super types.
+         */
+        public void accept(ConstantPoolScanner pool) {
+            addClass(pool.getReader().getSuperName());
+            for (String itf : pool.getReader().getInterfaces()) {
+                addClass(itf);
+            }
+            ConstantPoolScanner.MemberRefPredicate collector = (owner, name, desc) -> {
+                addClass(owner);
+                return false;
+            };
+            pool.anyFieldRef(collector);
+            pool.anyMethodRef(collector);
+        }
+
+        /**
+         * Record references of all classes in a jar.
+         */
+        public void acceptJar(Path jar) throws IOException {
+            acceptJar(jar, name -> true);
+        }
+
+        /**
+         * Record references of classes in a jar.
+         *
+         * @param jar    the jar to scan
+         * @param filter selects entries to scan by name
+         */
+        public void acceptJar(Path jar, Predicate<String> filter) throws IOException {
+            try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.getName().endsWith(".class") && filter.test(entry.getName())) {
+                        try (InputStream is = zipFile.getInputStream(entry)) {
+                            accept(new ConstantPoolScanner(new ClassReader(is.readAllBytes())));
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * {@return all collected classes, along with their Minecraft super types}
+         * Members may be resolved from a super type of the referenced owner, so these need to be widened as well.
+         *
+         * @param classProvider provider of runtime-named Minecraft classes
+         */
+        public Set<String> resolve(ClassProvider classProvider) {
+            Set<String> resolved = new HashSet<>(this.classes);
+            Deque<String> queue = new ArrayDeque<>(this.classes);
+            while (!queue.isEmpty()) {
+                classProvider.getClass(queue.pop()).ifPresent(info -> {
+                    String superName = info.getSuper();
+                    if (superName != null && superName.startsWith(MINECRAFT_PREFIX) && resolved.add(superName)) {
+                        queue.add(superName);
+                    }
+                    for (String itf : info.getInterfaces()) {
+                        if (itf.startsWith(MINECRAFT_PREFIX) && resolved.add(itf)) {
+                            queue.add(itf);
+                        }
+                    }
+                });
+            }
+            return resolved;
+        }
+
+        private void addClass(@Nullable String name) {
+            if (name != null && name.startsWith(MINECRAFT_PREFIX)) {
+                this.classes.add(name);
+            }
+        }
+    }
+
+    private WideningManifest() {}
+}
@@ -6,7 +6,6 @@ import dev.su5ed.sinytra.connector.transformer.jar.IntermediateMapping;
 import net.minecraftforge.srgutils.IMappingFile;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.LdcInsnNode;
@@ -21,6 +20,11 @@ import java.util.HashSet;
 import java.util.List;
 
 public class ClassAnalysingTransformer implements ClassNodeTransformer.ClassProcessor {
+    private static final String GET_RESOURCE_OWNER = "java/lang/Class";
+    private static final String GET_RESOURCE_NAME = "getResourceAsStream";
+    private static final String GET_RESOURCE_DESC = "(Ljava/lang/String;)Ljava/io/InputStream;";
+    private static final String THREE_STRING_ARGS_PREFIX = "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;";
+
     private final IMappingFile mappings;
     private final IntermediateMapping fastMappings;
 
@@ -31,10 +35,20 @@ public class ClassAnalysingTransformer implements ClassNodeTransformer.ClassProc
 
     record Replacement(MethodInsnNode methodInsn, AbstractInsnNode paramInsn) {}
 
+    @Override
+    public boolean mayProcess(ConstantPoolScanner pool) {
+        // Both kinds of calls we analyse leave their name or descriptor in the constant pool
+        return pool.containsUtf8(GET_RESOURCE_NAME) || pool.anyUtf8(str -> str.startsWith(THREE_STRING_ARGS_PREFIX));
+    }
+
     @Override
     public Patch.Result process(ClassNode node) {
         boolean applied = false;
         for (MethodNode method : node.methods) {
+            // Data flow analysis is expensive, only run it on methods that contain calls we're interested in
+            if (!requiresAnalysis(method)) {
+                continue;
+            }
             ScanningSourceInterpreter i = MethodCallAnalyzer.analyzeInterpretMethod(method, new ScanningSourceInterpreter(Opcodes.ASM9));
 
             applied |= i.remapApplied();
@@ -47,8 +61,36 @@ public class ClassAnalysingTransformer implements ClassNodeTransformer.ClassProc
         return applied ? Patch.Result.APPLY : Patch.Result.PASS;
     }
 
+    private boolean requiresAnalysis(MethodNode method) {
+        boolean hasReflectionCall = false;
+        boolean hasMappedClassName = false;
+        for (AbstractInsnNode insn : method.instructions) {
+            if (insn instanceof MethodInsnNode methodInsn) {
+                if (isGetResourceCall(methodInsn)) {
+                    return true;
+                }
+                hasReflectionCall |= hasThreeStringArgs(methodInsn);
+            }
+            else if (!hasMappedClassName && insn instanceof LdcInsnNode ldc && ldc.cst instanceof String str) {
+                // Reflection calls are only remapped when their owner is a class constant known to the mappings
+                hasMappedClassName = this.mappings.getClass(str.replace('.', '/')) != null;
+            }
+            if (hasReflectionCall && hasMappedClassName) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isGetResourceCall(MethodInsnNode methodInsn) {
+        return methodInsn.owner.equals(GET_RESOURCE_OWNER) && methodInsn.name.equals(GET_RESOURCE_NAME) && methodInsn.desc.equals(GET_RESOURCE_DESC);
+    }
+
+    private static boolean hasThreeStringArgs(MethodInsnNode methodInsn) {
+        return methodInsn.desc.startsWith(THREE_STRING_ARGS_PREFIX);
+    }
+
     private class ScanningSourceInterpreter extends SourceInterpreter {
-        private static final Type STR_TYPE = Type.getType(String.class);
         private final List<Replacement> replacements = new ArrayList<>();
         private final Collection<MethodInsnNode> seen = new HashSet<>();
         private boolean remapApplied = false;
@@ -68,7 +110,7 @@ public class ClassAnalysingTransformer implements ClassNodeTransformer.ClassProc
         @Override
         public SourceValue naryOperation(AbstractInsnNode insn, List<? extends SourceValue> values) {
             if (insn instanceof MethodInsnNode methodInsn && !this.seen.contains(methodInsn)) {
-                if (methodInsn.owner.equals("java/lang/Class") && methodInsn.name.equals("getResourceAsStream") && methodInsn.desc.equals("(Ljava/lang/String;)Ljava/io/InputStream;")) {
+                if (isGetResourceCall(methodInsn)) {
                     SourceValue value = values.get(0);
                     if (value.insns.size() == 1) {
                         AbstractInsnNode sourceInsn = value.insns.iterator().next();
@@ -80,8 +122,7 @@ public class ClassAnalysingTransformer implements ClassNodeTransformer.ClassProc
                     }
                 }
                 // Try to remap reflection method call args
-                Type[] args = Type.getArgumentTypes(methodInsn.desc);
-                if (args.length >= 3 && STR_TYPE.equals(args[0]) && STR_TYPE.equals(args[1]) && STR_TYPE.equals(args[2]) && values.size() >= 3) {
+                if (hasThreeStringArgs(methodInsn) && values.size() >= 3) {
                     LdcInsnNode ownerInsn = getSingleLDCString(values.get(0));
                     LdcInsnNode nameInsn = getSingleLDCString(values.get(1));
                     LdcInsnNode descInsn = getSingleLDCString(values.get(2));
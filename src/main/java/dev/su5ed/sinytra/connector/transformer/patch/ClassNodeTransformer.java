@@ -6,6 +6,7 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ClassNodeTransformer implements Transformer {
@@ -17,16 +18,16 @@ public class ClassNodeTransformer implements Transformer {
 
     @Override
     public ClassEntry process(ClassEntry entry) {
-        Patch.Result patchResult = Patch.Result.PASS;
-
         ClassReader reader = new ClassReader(entry.getData());
+        List<ClassProcessor> processors = getProcessors(new ConstantPoolScanner(reader));
+        // Avoid building a class tree if no processor can change it
+        if (processors.isEmpty()) {
+            return entry;
+        }
         ClassNode node = new ClassNode();
         reader.accept(node, 0);
 
-        for (ClassProcessor processor : this.processors) {
-            patchResult = patchResult.or(processor.process(node));
-        }
-
+        Patch.Result patchResult = processNode(node, processors);
         if (patchResult != Patch.Result.PASS) {
             ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS | (patchResult == Patch.Result.COMPUTE_FRAMES ? ClassWriter.COMPUTE_FRAMES : 0));
             node.accept(writer);
@@ -35,6 +36,33 @@ public class ClassNodeTransformer implements Transformer {
         return entry;
     }
 
+    public Patch.Result processNode(ClassNode node, List<ClassProcessor> processors) {
+        Patch.Result patchResult = Patch.Result.PASS;
+        for (ClassProcessor processor : processors) {
+            patchResult = patchResult.or(processor.process(node));
+        }
+        return patchResult;
+    }
+
+    /**
+     * {@return processors that may modify the scanned class}
+     */
+    public List<ClassProcessor> getProcessors(ConstantPoolScanner pool) {
+        List<ClassProcessor> processors = null;
+        for (int i = 0; i < this.processors.size(); i++) {
+            ClassProcessor processor = this.processors.get(i);
+            if (!processor.mayProcess(pool)) {
+                if (processors == null) {
+                    processors = new ArrayList<>(this.processors.subList(0, i));
+                }
+            }
+            else if (processors != null) {
+                processors.add(processor);
+            }
+        }
+        return processors != null ? processors : this.processors;
+    }
+
     @Override
     public ResourceEntry process(ResourceEntry entry) {
         for (ClassProcessor processor : this.processors) {
@@ -46,6 +74,16 @@ public class ClassNodeTransformer implements Transformer {
     public interface ClassProcessor {
         Patch.Result process(ClassNode node);
 
+        /**
+         * Cheaply check whether a class may be modified by this processor before its tree is built.
+         *
+         * @param pool the scanned constant pool of the class
+         * @return {@code false} if the class can be skipped
+         */
+        default boolean mayProcess(ConstantPoolScanner pool) {
+            return true;
+        }
+
         default ResourceEntry process(ResourceEntry entry) {
             return entry;
         }
@@ -3,15 +3,15 @@ package dev.su5ed.sinytra.connector.transformer.patch;
 import dev.su5ed.sinytra.adapter.patch.api.RefmapHolder;
 import dev.su5ed.sinytra.connector.transformer.SrgRemappingReferenceMapper;
 
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ConnectorRefmapHolder implements RefmapHolder {
     private final SrgRemappingReferenceMapper.SimpleRefmap merged;
     private final Map<String, SrgRemappingReferenceMapper.SimpleRefmap> refmapFiles;
-    private final Set<String> dirtyRefmaps = new HashSet<>();
+    private final Set<String> dirtyRefmaps = ConcurrentHashMap.newKeySet();
 
     public ConnectorRefmapHolder(SrgRemappingReferenceMapper.SimpleRefmap merged, Map<String, SrgRemappingReferenceMapper.SimpleRefmap> refmapFiles) {
         this.merged = merged;
@@ -25,19 +25,25 @@ public class ConnectorRefmapHolder implements RefmapHolder {
     @Override
     public String remap(String cls, String reference) {
         String cleanReference = reference.replaceAll(" ", "");
-        return Optional.ofNullable(this.merged.mappings.get(cls))
-            .map(map -> map.get(cleanReference))
-            .orElse(reference);
+        synchronized (this.refmapFiles) {
+            return Optional.ofNullable(this.merged.mappings.get(cls))
+                .map(map -> map.get(cleanReference))
+                .orElse(reference);
+        }
     }
 
     @Override
     public void copyEntries(String from, String to) {
-        copyMapEntries(this.merged, from, to);
-        this.refmapFiles.forEach((name, refmap) -> {
-            if (copyMapEntries(refmap, from, to)) {
-                this.dirtyRefmaps.add(name);
-            }
-        });
+        // Classes are patched concurrently and the merged refmap shares its maps with individual files,
+        // so we guard all of them with a single lock, which is also held by RefmapRemapper while writing
+        synchronized (this.refmapFiles) {
+            copyMapEntries(this.merged, from, to);
+            this.refmapFiles.forEach((name, refmap) -> {
+                if (copyMapEntries(refmap, from, to)) {
+                    this.dirtyRefmaps.add(name);
+                }
+            });
+        }
     }
 
     private boolean copyMapEntries(SrgRemappingReferenceMapper.SimpleRefmap refmap, String from, String to) {
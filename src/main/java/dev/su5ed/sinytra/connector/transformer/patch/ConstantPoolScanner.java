@@ -0,0 +1,122 @@
+package dev.su5ed.sinytra.connector.transformer.patch;
+
+import org.objectweb.asm.ClassReader;
+
+import java.util.function.Predicate;
+
+/**
+ * Provides cheap queries over the constant pool of a class, used to decide whether a transformer
+ * can possibly affect the class before its tree is built.
+ * UTF8 constants are decoded once and shared by all queries.
+ */
+public final class ConstantPoolScanner {
+    private static final int CONSTANT_UTF8_TAG = 1;
+    private static final int CONSTANT_FIELDREF_TAG = 9;
+    private static final int CONSTANT_METHODREF_TAG = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF_TAG = 11;
+
+    private final ClassReader reader;
+    // Decoded UTF8 constants by item index, null for other items
+    private final String[] utf8;
+
+    public ConstantPoolScanner(ClassReader reader) {
+        this.reader = reader;
+        this.utf8 = new String[reader.getItemCount()];
+        char[] buffer = new char[reader.getMaxStringLength()];
+        for (int i = 1; i < this.utf8.length; i++) {
+            int offset = reader.getItem(i);
+            if (offset != 0 && reader.readByte(offset - 1) == CONSTANT_UTF8_TAG) {
+                this.utf8[i] = readUtf(reader, offset, buffer);
+            }
+        }
+    }
+
+    public ClassReader getReader() {
+        return this.reader;
+    }
+
+    /**
+     * {@return whether the constant pool contains a UTF8 constant equal to the given value}
+     */
+    public boolean containsUtf8(String value) {
+        for (String str : this.utf8) {
+            if (value.equals(str)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@return whether any UTF8 constant in the constant pool matches the given predicate}
+     */
+    public boolean anyUtf8(Predicate<String> predicate) {
+        for (String str : this.utf8) {
+            if (str != null && predicate.test(str)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@return whether any field reference in the constant pool matches the given predicate}
+     */
+    public boolean anyFieldRef(MemberRefPredicate predicate) {
+        return anyMemberRef(predicate, CONSTANT_FIELDREF_TAG, CONSTANT_FIELDREF_TAG);
+    }
+
+    /**
+     * {@return whether any class or interface method reference in the constant pool matches the given predicate}
+     */
+    public boolean anyMethodRef(MemberRefPredicate predicate) {
+        return anyMemberRef(predicate, CONSTANT_METHODREF_TAG, CONSTANT_INTERFACE_METHODREF_TAG);
+    }
+
+    private boolean anyMemberRef(MemberRefPredicate predicate, int firstTag, int secondTag) {
+        for (int i = 1; i < this.utf8.length; i++) {
+            int offset = this.reader.getItem(i);
+            if (offset == 0) {
+                continue;
+            }
+            int tag = this.reader.readByte(offset - 1);
+            if (tag == firstTag || tag == secondTag) {
+                int classOffset = this.reader.getItem(this.reader.readUnsignedShort(offset));
+                int nameAndTypeOffset = this.reader.getItem(this.reader.readUnsignedShort(offset + 2));
+                String owner = this.utf8[this.reader.readUnsignedShort(classOffset)];
+                String name = this.utf8[this.reader.readUnsignedShort(nameAndTypeOffset)];
+                String desc = this.utf8[this.reader.readUnsignedShort(nameAndTypeOffset + 2)];
+                if (predicate.test(owner, name, desc)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Decodes a modified UTF8 constant, as readUTF8 only accepts offsets of constant pool indices
+    private static String readUtf(ClassReader reader, int offset, char[] buffer) {
+        int length = reader.readUnsignedShort(offset);
+        int current = offset + 2;
+        int end = current + length;
+        int size = 0;
+        while (current < end) {
+            int b = reader.readByte(current++);
+            if ((b & 0x80) == 0) {
+                buffer[size++] = (char) (b & 0x7F);
+            }
+            else if ((b & 0xE0) == 0xC0) {
+                buffer[size++] = (char) (((b & 0x1F) << 6) + (reader.readByte(current++) & 0x3F));
+            }
+            else {
+                buffer[size++] = (char) (((b & 0xF) << 12) + ((reader.readByte(current++) & 0x3F) << 6) + (reader.readByte(current++) & 0x3F));
+            }
+        }
+        return new String(buffer, 0, size);
+    }
+
+    @FunctionalInterface
+    public interface MemberRefPredicate {
+        boolean test(String owner, String name, String desc);
+    }
+}
@@ -18,7 +18,7 @@ import java.util.Iterator;
 import java.util.List;
 
 public class EnvironmentStripperTransformer implements ClassTransform {
-    private static final String ENVIRONMENT_ANNOTATION = Type.getDescriptor(Environment.class);
+    public static final String ENVIRONMENT_ANNOTATION = Type.getDescriptor(Environment.class);
     private static final EnvType CURRENT_ENV = FabricLoader.getInstance().getEnvironmentType();
 
     @Override
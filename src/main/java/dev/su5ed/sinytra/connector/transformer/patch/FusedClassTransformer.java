@@ -0,0 +1,128 @@
+package dev.su5ed.sinytra.connector.transformer.patch;
+
+import dev.su5ed.sinytra.adapter.patch.api.Patch;
+import dev.su5ed.sinytra.connector.transformer.MixinPatchTransformer;
+import dev.su5ed.sinytra.connector.transformer.OptimizedRenamingTransformer;
+import dev.su5ed.sinytra.connector.transformer.jar.WideningManifest;
+import net.minecraftforge.fart.api.Transformer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Connector's class transformation stages on a single parsed class tree.
+ * Classes are read once, passed through pre-remap processors, remapped tree-to-tree and
+ * patched by the mixin transformer before being written out in a single pass.
+ * Classes that none of the stages can affect, as determined by a scan of their constant pool, are passed through unchanged.
+ * Non-class entries are handled by each stage in order, as if they were added to the renamer individually.
+ * The final constant pool of every class, including generated extra classes, is reported to a {@link WideningManifest.Collector}.
+ */
+public class FusedClassTransformer implements Transformer {
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+
+    private final ClassNodeTransformer classNodeTransformer;
+    private final OptimizedRenamingTransformer remappingTransformer;
+    private final MixinPatchTransformer patchTransformer;
+    private final List<Transformer> stages;
+    private final WideningManifest.Collector wideningCollector;
+    // Statistics of classes processed in this jar
+    private final AtomicInteger classCount = new AtomicInteger();
+    private final AtomicInteger passedThroughCount = new AtomicInteger();
+
+    public FusedClassTransformer(ClassNodeTransformer classNodeTransformer, OptimizedRenamingTransformer remappingTransformer, MixinPatchTransformer patchTransformer, WideningManifest.Collector wideningCollector) {
+        this.classNodeTransformer = classNodeTransformer;
+        this.remappingTransformer = remappingTransformer;
+        this.patchTransformer = patchTransformer;
+        this.stages = List.of(classNodeTransformer, remappingTransformer, patchTransformer);
+        this.wideningCollector = wideningCollector;
+    }
+
+    @Override
+    public ClassEntry process(ClassEntry entry) {
+        this.classCount.incrementAndGet();
+        ClassReader reader = new ClassReader(entry.getData());
+        ConstantPoolScanner pool = new ConstantPoolScanner(reader);
+        List<ClassNodeTransformer.ClassProcessor> processors = this.classNodeTransformer.getProcessors(pool);
+        if (processors.isEmpty() && !this.remappingTransformer.mayRemap(pool) && !this.patchTransformer.mayProcess(pool)) {
+            this.passedThroughCount.incrementAndGet();
+            this.wideningCollector.accept(pool);
+            return entry;
+        }
+        ClassNode node = new ClassNode();
+        reader.accept(node, 0);
+
+        Patch.Result patchResult = this.classNodeTransformer.processNode(node, processors);
+        ClassNode remapped = this.remappingTransformer.remapClass(node);
+        patchResult = patchResult.or(this.patchTransformer.processNode(remapped));
+
+        // Remapping alone keeps existing maxs and frames intact, so we only compute them when a stage asks us to
+        int flags = patchResult == Patch.Result.COMPUTE_FRAMES ? ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES
+            : patchResult == Patch.Result.APPLY ? ClassWriter.COMPUTE_MAXS : 0;
+        ClassWriter writer = new ClassWriter(flags);
+        remapped.accept(writer);
+        byte[] data = writer.toByteArray();
+        this.wideningCollector.accept(new ConstantPoolScanner(new ClassReader(data)));
+        return ClassEntry.create(getVersionPrefix(entry.getName()) + remapped.name + ".class", entry.getTime(), data);
+    }
+
+    @Override
+    public ResourceEntry process(ResourceEntry entry) {
+        for (Transformer stage : this.stages) {
+            entry = stage.process(entry);
+            if (entry == null) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public ManifestEntry process(ManifestEntry entry) {
+        for (Transformer stage : this.stages) {
+            entry = stage.process(entry);
+            if (entry == null) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public Collection<? extends Entry> getExtras() {
+        List<Entry> extras = new ArrayList<>();
+        for (Transformer stage : this.stages) {
+            for (Entry extra : stage.getExtras()) {
+                // Includes mixin classes generated by patches
+                if (extra instanceof ClassEntry classEntry) {
+                    this.wideningCollector.accept(new ConstantPoolScanner(new ClassReader(classEntry.getData())));
+                }
+                extras.add(extra);
+            }
+        }
+        return extras;
+    }
+
+    public int getClassCount() {
+        return this.classCount.get();
+    }
+
+    public int getPassedThroughCount() {
+        return this.passedThroughCount.get();
+    }
+
+    // Preserve the location of multi-release classes
+    private static String getVersionPrefix(String name) {
+        if (name.startsWith(VERSIONS_PREFIX)) {
+            int versionEnd = name.indexOf('/', VERSIONS_PREFIX.length());
+            if (versionEnd != -1) {
+                return name.substring(0, versionEnd + 1);
+            }
+        }
+        return "";
+    }
+}
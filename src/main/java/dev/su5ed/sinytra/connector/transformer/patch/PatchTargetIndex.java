@@ -0,0 +1,150 @@
+package dev.su5ed.sinytra.connector.transformer.patch;
+
+import com.mojang.logging.LogUtils;
+import dev.su5ed.sinytra.adapter.patch.api.Patch;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.slf4j.Logger;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Groups patches by the classes they target, so that each mixin is only checked against patches that may apply to it.
+ * Patches without known targets are placed in a wildcard bucket and are checked against all mixins.
+ * The original order of patches is preserved.
+ */
+public final class PatchTargetIndex {
+    private static final String MIXIN_ANN = "Lorg/spongepowered/asm/mixin/Mixin;";
+    // Name of the patch instance field holding target class names
+    private static final String TARGET_CLASSES_FIELD = "targetClasses";
+    private static final Map<Class<?>, Optional<Field>> TARGET_FIELDS = new ConcurrentHashMap<>();
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private final Patch[] patches;
+    private final BitSet wildcard;
+    private final Map<String, BitSet> byTarget;
+
+    public PatchTargetIndex(List<? extends Patch> patches) {
+        this.patches = patches.toArray(Patch[]::new);
+        this.wildcard = new BitSet(this.patches.length);
+        this.byTarget = new HashMap<>();
+        for (int i = 0; i < this.patches.length; i++) {
+            Collection<String> targets = getTargetClasses(this.patches[i]);
+            if (targets == null || targets.isEmpty()) {
+                this.wildcard.set(i);
+            }
+            else {
+                for (String target : targets) {
+                    this.byTarget.computeIfAbsent(target.replace('.', '/'), s -> new BitSet()).set(i);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return this.patches.length;
+    }
+
+    /**
+     * {@return patches that may apply to the given mixin class, in their original order}
+     */
+    public List<Patch> getPatches(ClassNode node) {
+        BitSet selected = (BitSet) this.wildcard.clone();
+        BitSet own = this.byTarget.get(node.name);
+        if (own != null) {
+            selected.or(own);
+        }
+        for (String target : getMixinTargets(node)) {
+            BitSet patches = this.byTarget.get(target);
+            if (patches != null) {
+                selected.or(patches);
+            }
+        }
+        List<Patch> list = new ArrayList<>(selected.cardinality());
+        selected.stream().forEach(i -> list.add(this.patches[i]));
+        return list;
+    }
+
+    /**
+     * Read the targets of a mixin class from its {@code @Mixin} annotation.
+     *
+     * @param node the mixin class node
+     * @return internal names of target classes
+     */
+    public static Set<String> getMixinTargets(ClassNode node) {
+        Set<String> targets = new HashSet<>();
+        collectMixinTargets(node.visibleAnnotations, targets);
+        collectMixinTargets(node.invisibleAnnotations, targets);
+        return targets;
+    }
+
+    private static void collectMixinTargets(@Nullable List<AnnotationNode> annotations, Set<String> targets) {
+        if (annotations == null) {
+            return;
+        }
+        for (AnnotationNode annotation : annotations) {
+            if (!MIXIN_ANN.equals(annotation.desc) || annotation.values == null) {
+                continue;
+            }
+            for (int i = 0; i + 1 < annotation.values.size(); i += 2) {
+                String name = (String) annotation.values.get(i);
+                if (annotation.values.get(i + 1) instanceof List<?> values) {
+                    for (Object value : values) {
+                        if ("value".equals(name) && value instanceof Type type) {
+                            targets.add(type.getInternalName());
+                        }
+                        else if ("targets".equals(name) && value instanceof String target) {
+                            targets.add(target.replace('.', '/'));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // The patch API doesn't expose targets, so we look them up reflectively and treat the patch as untargeted if that fails
+    @Nullable
+    private static Collection<String> getTargetClasses(Patch patch) {
+        Optional<Field> field = TARGET_FIELDS.computeIfAbsent(patch.getClass(), PatchTargetIndex::findTargetField);
+        if (field.isPresent()) {
+            try {
+                if (field.get().get(patch) instanceof Collection<?> collection && collection.stream().allMatch(String.class::isInstance)) {
+                    //noinspection unchecked
+                    return (Collection<String>) collection;
+                }
+            } catch (IllegalAccessException e) {
+                LOGGER.warn("Failed to read target classes of patch {}, checking it against all mixins", patch.getClass().getName(), e);
+            }
+        }
+        return null;
+    }
+
+    private static Optional<Field> findTargetField(Class<?> cls) {
+        for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                Field field = c.getDeclaredField(TARGET_CLASSES_FIELD);
+                field.setAccessible(true);
+                return Optional.of(field);
+            } catch (NoSuchFieldException ignored) {
+            } catch (RuntimeException e) {
+                LOGGER.warn("Cannot access target classes of patch type {}, checking its patches against all mixins", cls.getName(), e);
+                return Optional.empty();
+            }
+        }
+        // Reported once per type, as the index degrades to checking every patch against every mixin
+        LOGGER.warn("Patch type {} has no {} field, checking its patches against all mixins", cls.getName(), TARGET_CLASSES_FIELD);
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,143 @@
+package dev.su5ed.sinytra.connector.transformer.jar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JarEntryIndexTest {
+    private static final long ENTRY_TIME = 946684800000L;
+    private static final String SERVICE = "META-INF/services/com.example.Service";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void incrementalTransformMatchesFullTransform() throws IOException {
+        Map<String, byte[]> entries = createEntries();
+        Path previousInput = writeJar("previous_input.jar", entries);
+        entries.put("com/example/Second.class", generateClass("com/example/Second", "renamed"));
+        Path input = writeJar("input.jar", entries);
+
+        JarEntryIndex.Diff diff = JarEntryIndex.create(input.toFile()).diff(JarEntryIndex.create(previousInput.toFile()));
+        assertEquals(Set.of("com/example/Second.class"), diff.changed());
+        assertEquals(Set.of(), diff.added());
+        assertEquals(Set.of(), diff.removed());
+
+        assertIncrementalTransformMatches(previousInput, input, Set.of("com/example/Second.class"));
+    }
+
+    @Test
+    void addedClassReprocessesServices() throws IOException {
+        Map<String, byte[]> entries = createEntries();
+        Path previousInput = writeJar("previous_input.jar", entries);
+        // Added entries are appended, so this one sorts last to match the full transform's entry order
+        entries.put("com/example/Zeta.class", generateClass("com/example/Zeta", "value"));
+        Path input = writeJar("input.jar", entries);
+
+        JarEntryIndex.Diff diff = JarEntryIndex.create(input.toFile()).diff(JarEntryIndex.create(previousInput.toFile()));
+        assertEquals(Set.of("com/example/Zeta.class"), diff.changed());
+        assertEquals(Set.of("com/example/Zeta.class"), diff.added());
+
+        assertIncrementalTransformMatches(previousInput, input, Set.of("com/example/Zeta.class", SERVICE));
+    }
+
+    private void assertIncrementalTransformMatches(Path previousInput, Path input, Set<String> expectedProcessed) throws IOException {
+        Set<String> processed = new HashSet<>();
+        JarEntryIndex.JarProcessor processor = (in, out) -> transform(in.toPath(), out.toPath(), processed);
+
+        Path previousOutput = this.tempDir.resolve("previous_output.jar");
+        processor.process(previousInput.toFile(), previousOutput.toFile());
+        Path fullOutput = this.tempDir.resolve("full_output.jar");
+        processor.process(input.toFile(), fullOutput.toFile());
+
+        JarEntryIndex index = JarEntryIndex.create(input.toFile());
+        JarEntryIndex.Diff diff = index.diff(JarEntryIndex.create(previousInput.toFile()));
+
+        processed.clear();
+        Path incrementalOutput = this.tempDir.resolve("incremental_output.jar");
+        index.transformChanges(processor, input.toFile(), previousOutput, incrementalOutput, diff);
+
+        assertEquals(expectedProcessed, processed);
+        assertArrayEquals(Files.readAllBytes(fullOutput), Files.readAllBytes(incrementalOutput));
+    }
+
+    private static Map<String, byte[]> createEntries() {
+        Map<String, byte[]> entries = new TreeMap<>();
+        entries.put("com/example/First.class", generateClass("com/example/First", "value"));
+        entries.put("com/example/Second.class", generateClass("com/example/Second", "value"));
+        entries.put("com/example/Third.class", generateClass("com/example/Third", "value"));
+        entries.put("assets/example/lang/en_us.json", "{}".getBytes(StandardCharsets.UTF_8));
+        entries.put(SERVICE, "com.example.First".getBytes(StandardCharsets.UTF_8));
+        return entries;
+    }
+
+    private Path writeJar(String name, Map<String, byte[]> entries) throws IOException {
+        Path path = this.tempDir.resolve(name);
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                zipEntry.setTime(ENTRY_TIME);
+                zos.putNextEntry(zipEntry);
+                zos.write(entry.getValue());
+                zos.closeEntry();
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Stands in for the renamer: writes every entry in name order, with a transformation applied to its data.
+     */
+    private static void transform(Path input, Path output, Set<String> processed) throws IOException {
+        try (ZipFile zipFile = new ZipFile(input.toFile());
+             ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(output))) {
+            List<? extends ZipEntry> entries = zipFile.stream()
+                .sorted(Comparator.comparing(ZipEntry::getName))
+                .toList();
+            for (ZipEntry entry : entries) {
+                byte[] data;
+                try (InputStream is = zipFile.getInputStream(entry)) {
+                    data = is.readAllBytes();
+                }
+                for (int i = 0; i < data.length / 2; i++) {
+                    byte b = data[i];
+                    data[i] = data[data.length - 1 - i];
+                    data[data.length - 1 - i] = b;
+                }
+                ZipEntry copy = new ZipEntry(entry.getName());
+                copy.setTime(entry.getTime());
+                zos.putNextEntry(copy);
+                zos.write(data);
+                zos.closeEntry();
+                processed.add(entry.getName());
+            }
+        }
+    }
+
+    private static byte[] generateClass(String name, String field) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PRIVATE, field, "I", null, null).visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}